@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.enums;
+
+import com.cxxwl96.updater.api.utils.hash.ChecksumHasher;
+import com.cxxwl96.updater.api.utils.hash.Crc32c;
+import com.cxxwl96.updater.api.utils.hash.DigestHasher;
+import com.cxxwl96.updater.api.utils.hash.Hasher;
+import com.cxxwl96.updater.api.utils.hash.XxHash64;
+
+import java.nio.ByteBuffer;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.SecureUtil;
+import lombok.Getter;
+
+/**
+ * 清单哈希算法
+ * - CRC32为默认算法，清单中以十进制保存，兼容旧版本清单；其余算法以十六进制保存
+ *
+ * @author cxxwl96
+ * @since 2024/04/28 19:45
+ */
+public enum HashAlgorithm {
+    // CRC32，十进制输出，兼容旧版本清单
+    CRC32(8) {
+        @Override
+        public Hasher newHasher() {
+            return new ChecksumHasher(new CRC32(), 0);
+        }
+
+        @Override
+        public byte[] toBytes(String hash) {
+            return ByteBuffer.allocate(getHashBytes()).putLong(Long.parseLong(hash)).array();
+        }
+
+        @Override
+        public String fromBytes(byte[] bytes) {
+            return String.valueOf(ByteBuffer.wrap(bytes).getLong());
+        }
+
+        @Override
+        public boolean isHash(String hash) {
+            return hash != null && DECIMAL.matcher(hash).matches() && Long.parseLong(hash) <= 0xffffffffL;
+        }
+    },
+    // CRC32C，JDK9+有硬件加速
+    CRC32C(4) {
+        @Override
+        public Hasher newHasher() {
+            return new ChecksumHasher(Crc32c.create(), 8);
+        }
+    },
+    // xxHash64
+    XXHASH64(8) {
+        @Override
+        public Hasher newHasher() {
+            return new ChecksumHasher(new XxHash64(), 16);
+        }
+    },
+    // SHA-256
+    SHA256(32) {
+        @Override
+        public Hasher newHasher() {
+            return new DigestHasher(SecureUtil.sha256().getDigest());
+        }
+    },
+    ;
+
+    private static final Pattern DECIMAL = Pattern.compile("\\d{1,10}");
+
+    private static final Pattern HEX = Pattern.compile("[0-9a-f]+");
+
+    // 二进制索引中哈希值的字节数
+    @Getter
+    private final int hashBytes;
+
+    HashAlgorithm(int hashBytes) {
+        this.hashBytes = hashBytes;
+    }
+
+    /**
+     * 创建流式哈希计算
+     *
+     * @return Hasher
+     */
+    public abstract Hasher newHasher();
+
+    /**
+     * 哈希值转为二进制
+     *
+     * @param hash 哈希值
+     * @return 二进制哈希值
+     */
+    public byte[] toBytes(String hash) {
+        return HexUtil.decodeHex(hash);
+    }
+
+    /**
+     * 二进制转为哈希值
+     *
+     * @param bytes 二进制哈希值
+     * @return 哈希值
+     */
+    public String fromBytes(byte[] bytes) {
+        return HexUtil.encodeHexStr(bytes);
+    }
+
+    /**
+     * 是否为该算法输出格式的哈希值，用于校验客户端传入的哈希值
+     *
+     * @param hash 哈希值
+     * @return 是否合法
+     */
+    public boolean isHash(String hash) {
+        return hash != null && hash.length() == hashBytes * 2 && HEX.matcher(hash).matches();
+    }
+
+    /**
+     * 是否为任一算法输出格式的哈希值
+     *
+     * @param hash 哈希值
+     * @return 是否合法
+     */
+    public static boolean isAnyHash(String hash) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.isHash(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 未声明算法的清单视为CRC32
+     *
+     * @param algorithm 算法
+     * @return 算法
+     */
+    public static HashAlgorithm orDefault(HashAlgorithm algorithm) {
+        return algorithm == null ? CRC32 : algorithm;
+    }
+}
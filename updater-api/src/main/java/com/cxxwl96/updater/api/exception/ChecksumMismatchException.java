@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.exception;
+
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.util.StrUtil;
+import lombok.Getter;
+
+/**
+ * 文件校验失败异常，下载的内容与清单中的哈希值不一致
+ *
+ * @author cxxwl96
+ * @since 2024/05/12 21:18
+ */
+@Getter
+public class ChecksumMismatchException extends IORuntimeException {
+    // 文件路径
+    private final String path;
+
+    // 清单中的哈希值
+    private final String expected;
+
+    // 实际的哈希值
+    private final String actual;
+
+    public ChecksumMismatchException(String path, String expected, String actual) {
+        super(StrUtil.format("文件校验失败: {} 期望{} 实际{}", path, expected, actual));
+        this.path = path;
+        this.expected = expected;
+        this.actual = actual;
+    }
+}
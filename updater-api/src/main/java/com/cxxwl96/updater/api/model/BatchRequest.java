@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.model;
+
+import java.util.List;
+
+import javax.validation.constraints.NotEmpty;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 批量更新请求，一次响应中返回多个文件
+ *
+ * @author cxxwl96
+ * @since 2024/05/08 20:12
+ */
+@Data
+@Accessors(chain = true)
+public class BatchRequest {
+    // 文件相对应用根目录的路径
+    @NotEmpty(message = "请选择需要更新的应用文件")
+    private List<String> paths;
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.model;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 文件块签名
+ *
+ * @author cxxwl96
+ * @since 2024/04/24 20:31
+ */
+@Data
+@Accessors(chain = true)
+public class BlockSignature {
+    // 块序号
+    private int index;
+
+    // 弱校验（滚动校验和）
+    private int weak;
+
+    // 强校验（MD5）
+    private String strong;
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.model;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * 二进制CHECKLIST索引（只读）
+ * - 条目按路径的UTF-8字节序排序，支持二分查找
+ * - 数据直接从缓冲区中按需读取，不做整体解析
+ * - 格式版本1只支持crc32，版本2在文件头中声明哈希算法，条目中的哈希值长度由算法决定
+ *
+ * @author cxxwl96
+ * @since 2024/04/20 14:12
+ */
+public class ChecklistIndex {
+    // 魔数 "UPCI"
+    public static final int MAGIC = 0x55504349;
+
+    public static final short FORMAT_VERSION = 2;
+
+    // 条目长度：hash(算法决定) + size(8) + pathOffset(4) + pathLength(4)
+    public static final int ENTRY_FIXED_BYTES = 16;
+
+    private final ByteBuffer buffer;
+
+    @Getter
+    private final String appName;
+
+    @Getter
+    private final String version;
+
+    @Getter
+    private final HashAlgorithm algorithm;
+
+    private final int hashBytes;
+
+    private final int entryBytes;
+
+    private final int count;
+
+    private final int entriesOffset;
+
+    private final int pathsOffset;
+
+    public ChecklistIndex(ByteBuffer buffer) {
+        this.buffer = buffer.duplicate();
+        ByteBuffer header = buffer.duplicate();
+        if (header.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a checklist index");
+        }
+        short formatVersion = header.getShort();
+        if (formatVersion != 1 && formatVersion != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported checklist index version: " + formatVersion);
+        }
+        this.appName = readString(header);
+        this.version = readString(header);
+        // 版本1的crc32以long保存，与CRC32算法的二进制形式一致
+        this.algorithm = formatVersion == 1 ? HashAlgorithm.CRC32 : HashAlgorithm.valueOf(readString(header));
+        this.hashBytes = algorithm.getHashBytes();
+        this.entryBytes = hashBytes + ENTRY_FIXED_BYTES;
+        this.count = header.getInt();
+        this.entriesOffset = header.position();
+        this.pathsOffset = entriesOffset + count * entryBytes;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public String getHash(int index) {
+        byte[] bytes = new byte[hashBytes];
+        ByteBuffer hash = buffer.duplicate();
+        hash.position(entryOffset(index));
+        hash.get(bytes);
+        return algorithm.fromBytes(bytes);
+    }
+
+    public long getSize(int index) {
+        return buffer.getLong(entryOffset(index) + hashBytes);
+    }
+
+    public String getPath(int index) {
+        int offset = entryOffset(index) + hashBytes;
+        byte[] bytes = new byte[buffer.getInt(offset + 12)];
+        ByteBuffer path = buffer.duplicate();
+        path.position(pathsOffset + buffer.getInt(offset + 8));
+        path.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 二分查找路径所在的条目
+     *
+     * @param path 文件相对路径
+     * @return 条目下标，不存在则返回负数
+     */
+    public int indexOf(String path) {
+        byte[] key = path.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = comparePath(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * 转为UpdateModel
+     *
+     * @return UpdateModel
+     */
+    public UpdateModel toUpdateModel() {
+        List<FileModel> fileModels = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String path = getPath(i);
+            String hash = getHash(i);
+            fileModels.add(new FileModel().setPath(path)
+                .setName(path.substring(path.lastIndexOf('/') + 1))
+                .setCrc32(algorithm == HashAlgorithm.CRC32 ? Long.valueOf(hash) : null)
+                .setHash(hash)
+                .setSize(getSize(i)));
+        }
+        return new UpdateModel().setAppName(appName).setVersion(version).setAlgorithm(algorithm).setFiles(fileModels);
+    }
+
+    private int entryOffset(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+        }
+        return entriesOffset + index * entryBytes;
+    }
+
+    private int comparePath(int index, byte[] key) {
+        int offset = entryOffset(index) + hashBytes;
+        int start = pathsOffset + buffer.getInt(offset + 8);
+        int length = buffer.getInt(offset + 12);
+        int min = Math.min(length, key.length);
+        for (int i = 0; i < min; i++) {
+            int cmp = (buffer.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - key.length;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -26,4 +26,6 @@ public class Constant {
     public static final String LATEST = "LATEST";
 
     public static final String CHECKLIST = "CHECKLIST";
+
+    public static final String CHECKLIST_INDEX = "CHECKLIST.idx";
 }
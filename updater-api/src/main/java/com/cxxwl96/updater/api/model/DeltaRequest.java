@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.model;
+
+import java.util.List;
+
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.Positive;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 块增量更新请求
+ *
+ * @author cxxwl96
+ * @since 2024/04/24 20:31
+ */
+@Data
+@Accessors(chain = true)
+public class DeltaRequest {
+    // 文件相对应用根目录的路径
+    @NotBlank(message = "文件路径为空")
+    private String path;
+
+    // 块大小
+    @Positive(message = "块大小错误")
+    private int blockSize;
+
+    // 客户端本地文件的块签名
+    private List<BlockSignature> signatures;
+}
@@ -48,11 +48,17 @@ public class FileModel {
     // 文件名
     private String name;
 
-    // 文件crc32
+    // 文件crc32，仅CRC32算法的清单提供
     private Long crc32;
 
+    // 文件哈希值，算法由清单声明
+    private String hash;
+
     // 文件大小。单位：Bit
     private Long size;
 
+    // 补丁大小，服务端提供补丁时不为空。单位：Bit
+    private Long patchSize;
+
     private List<FileModel> children;
 }
@@ -16,6 +16,8 @@
 
 package com.cxxwl96.updater.api.model;
 
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+
 import java.util.List;
 
 import javax.validation.Valid;
@@ -41,6 +43,9 @@ public class UpdateModel {
     @NotBlank(message = "应用版本为空")
     private String version;
 
+    // 清单哈希算法，为空时为CRC32
+    private HashAlgorithm algorithm;
+
     // 应用文件列表
     @Valid
     private List<FileModel> files;
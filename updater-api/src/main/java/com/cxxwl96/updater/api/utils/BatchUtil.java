@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.utils;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.utils.hash.Hasher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.StreamProgress;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 批量文件流工具，一次响应中顺序返回多个文件
+ * - 流格式: { FILE utf(路径) long(文件长度) bytes long(crc32) }* END
+ * - 客户端边接收边写入文件，每个文件校验crc32后再替换目标文件
+ * - 接收时可同时按清单的哈希值校验，校验失败的文件跳过，不影响后续文件
+ *
+ * @author cxxwl96
+ * @since 2024/05/08 20:12
+ */
+@Slf4j
+public class BatchUtil {
+    private static final byte END = 0;
+
+    private static final byte FILE = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String TEMP_SUFFIX = ".batch";
+
+    private BatchUtil() {
+    }
+
+    /**
+     * 写出批量文件流
+     *
+     * @param paths 文件路径
+     * @param fileResolver 根据路径获取文件
+     * @param outputStream 输出
+     */
+    public static void write(List<String> paths, Function<String, File> fileResolver, OutputStream outputStream) {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, BUFFER_SIZE));
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            for (String path : paths) {
+                File file = fileResolver.apply(path);
+                CRC32 crc32 = new CRC32();
+                long length = file.length();
+                out.writeByte(FILE);
+                out.writeUTF(path);
+                out.writeLong(length);
+                try (InputStream in = FileUtil.getInputStream(file)) {
+                    long remaining = length;
+                    while (remaining > 0) {
+                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read < 0) {
+                            throw new IOException("文件长度已变化: " + path);
+                        }
+                        out.write(buffer, 0, read);
+                        crc32.update(buffer, 0, read);
+                        remaining -= read;
+                    }
+                }
+                out.writeLong(crc32.getValue());
+            }
+            out.writeByte(END);
+            out.flush();
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        }
+    }
+
+    /**
+     * 读取批量文件流并写入文件
+     *
+     * @param inputStream 批量文件流
+     * @param fileResolver 根据路径获取目标文件
+     * @param progressFactory 根据路径获取单个文件的进度，可以为null
+     * @return 写入的文件数
+     */
+    public static int read(InputStream inputStream, Function<String, File> fileResolver,
+        Function<String, StreamProgress> progressFactory) {
+        return read(inputStream, fileResolver, progressFactory, null, null);
+    }
+
+    /**
+     * 读取批量文件流并写入文件，同时按清单的哈希值校验
+     * - 传输校验或清单校验失败的文件不写入目标文件，也不通知完成，由调用方重新下载
+     *
+     * @param inputStream 批量文件流
+     * @param fileResolver 根据路径获取目标文件
+     * @param progressFactory 根据路径获取单个文件的进度，可以为null
+     * @param algorithm 清单的哈希算法
+     * @param hashResolver 根据路径获取清单中的哈希值，可以为null，返回null时不校验
+     * @return 写入的文件数
+     */
+    public static int read(InputStream inputStream, Function<String, File> fileResolver,
+        Function<String, StreamProgress> progressFactory, HashAlgorithm algorithm, Function<String, String> hashResolver) {
+        algorithm = HashAlgorithm.orDefault(algorithm);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count = 0;
+        File tempFile = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, BUFFER_SIZE))) {
+            while (true) {
+                byte instruction = in.readByte();
+                if (instruction == END) {
+                    return count;
+                }
+                if (instruction != FILE) {
+                    throw new IOException("未知的批量指令: " + instruction);
+                }
+                String path = in.readUTF();
+                long length = in.readLong();
+                File file = fileResolver.apply(path);
+                StreamProgress progress = progressFactory == null ? null : progressFactory.apply(path);
+                tempFile = FileUtil.newFile(file.getPath() + TEMP_SUFFIX);
+                FileUtil.mkParentDirs(tempFile);
+                CRC32 crc32 = new CRC32();
+                String expectedHash = hashResolver == null ? null : hashResolver.apply(path);
+                // CRC32清单直接使用传输校验的crc32，其他算法同时计算
+                Hasher hasher = expectedHash != null && algorithm != HashAlgorithm.CRC32 ? algorithm.newHasher() : null;
+                if (progress != null) {
+                    progress.start();
+                }
+                try (OutputStream out = FileUtil.getOutputStream(tempFile)) {
+                    long remaining = length;
+                    while (remaining > 0) {
+                        int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                        if (read < 0) {
+                            throw new IOException("批量数据流意外结束: " + path);
+                        }
+                        out.write(buffer, 0, read);
+                        crc32.update(buffer, 0, read);
+                        if (hasher != null) {
+                            hasher.update(buffer, 0, read);
+                        }
+                        remaining -= read;
+                        if (progress != null) {
+                            progress.progress(length, length - remaining);
+                        }
+                    }
+                }
+                if (in.readLong() != crc32.getValue()) {
+                    log.warn("文件传输校验失败: {}", path);
+                    FileUtil.del(tempFile);
+                    tempFile = null;
+                    continue;
+                }
+                if (expectedHash != null) {
+                    String actualHash = hasher == null ? String.valueOf(crc32.getValue()) : hasher.digest();
+                    if (!expectedHash.equals(actualHash)) {
+                        log.warn("文件校验失败: {} 期望{} 实际{}", path, expectedHash, actualHash);
+                        FileUtil.del(tempFile);
+                        tempFile = null;
+                        continue;
+                    }
+                }
+                FileUtil.move(tempFile, file, true);
+                tempFile = null;
+                count++;
+                if (progress != null) {
+                    progress.finish();
+                }
+            }
+        } catch (IOException exception) {
+            // 清理未接收完整的文件
+            if (tempFile != null) {
+                FileUtil.del(tempFile);
+            }
+            throw new IORuntimeException(exception);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.utils;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.model.ChecklistIndex;
+import com.cxxwl96.updater.api.model.FileModel;
+import com.cxxwl96.updater.api.model.UpdateModel;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.util.StrUtil;
+
+/**
+ * 二进制CHECKLIST索引工具
+ * - 格式: magic(4) formatVersion(2) appName version algorithm count(4) entries[count] paths
+ * - entry: hash(算法决定) size(8) pathOffset(4) pathLength(4)
+ *
+ * @author cxxwl96
+ * @since 2024/04/20 14:12
+ */
+public class ChecklistIndexUtil {
+    /**
+     * 写入二进制CHECKLIST索引
+     *
+     * @param updateModel 应用文件列表，路径为相对路径并包含文件大小
+     * @param indexFile 索引文件
+     */
+    public static void write(UpdateModel updateModel, File indexFile) {
+        List<byte[]> paths = new ArrayList<>();
+        List<FileModel> fileModels = new ArrayList<>(Optional.ofNullable(updateModel.getFiles()).orElse(new ArrayList<>()));
+        List<byte[]> sortedPaths = new ArrayList<>(fileModels.size());
+        fileModels.forEach(fileModel -> paths.add(fileModel.getPath().getBytes(StandardCharsets.UTF_8)));
+        Integer[] order = new Integer[fileModels.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(paths::get, ChecklistIndexUtil::compareBytes));
+        HashAlgorithm algorithm = HashAlgorithm.orDefault(updateModel.getAlgorithm());
+
+        FileUtil.mkParentDirs(indexFile);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(FileUtil.getOutputStream(indexFile)))) {
+            out.writeInt(ChecklistIndex.MAGIC);
+            out.writeShort(ChecklistIndex.FORMAT_VERSION);
+            writeString(out, updateModel.getAppName());
+            writeString(out, updateModel.getVersion());
+            writeString(out, algorithm.name());
+            out.writeInt(order.length);
+            int pathOffset = 0;
+            for (Integer i : order) {
+                FileModel fileModel = fileModels.get(i);
+                byte[] path = paths.get(i);
+                out.write(algorithm.toBytes(ChecksumUtil.hashOf(fileModel)));
+                out.writeLong(Optional.ofNullable(fileModel.getSize()).orElse(0L));
+                out.writeInt(pathOffset);
+                out.writeInt(path.length);
+                pathOffset += path.length;
+                sortedPaths.add(path);
+            }
+            for (byte[] path : sortedPaths) {
+                out.write(path);
+            }
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        }
+    }
+
+    /**
+     * 读取二进制CHECKLIST索引
+     * - 索引一次读入堆内存后即关闭文件，条目按需从缓冲区解析
+     * - 不使用内存映射: 加载清单时会遍历全部条目，映射没有收益，且映射的缓冲区在GC前不会释放，Windows下会一直占用文件，导致版本无法删除
+     *
+     * @param indexFile 索引文件
+     * @return ChecklistIndex
+     */
+    public static ChecklistIndex open(File indexFile) {
+        return new ChecklistIndex(ByteBuffer.wrap(FileUtil.readBytes(indexFile)));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = StrUtil.nullToEmpty(value).getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int compareBytes(byte[] a, byte[] b) {
+        int min = Math.min(a.length, b.length);
+        for (int i = 0; i < min; i++) {
+            int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.length - b.length;
+    }
+}
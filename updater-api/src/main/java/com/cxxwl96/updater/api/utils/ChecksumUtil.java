@@ -16,20 +16,35 @@
 
 package com.cxxwl96.updater.api.utils;
 
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
 import com.cxxwl96.updater.api.exception.BadRequestException;
 import com.cxxwl96.updater.api.model.Constant;
 import com.cxxwl96.updater.api.model.FileModel;
 import com.cxxwl96.updater.api.model.UpdateModel;
+import com.cxxwl96.updater.api.utils.hash.Hasher;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
 import cn.hutool.core.io.resource.ResourceUtil;
 import cn.hutool.core.lang.Assert;
 import cn.hutool.core.util.StrUtil;
@@ -48,12 +63,23 @@ public class ChecksumUtil {
 
     private static final String LINE_BREAK = "\n";
 
+    private static final int CHECKSUM_BATCH_SIZE = 64;
+
     private static final String CHECK_LIST_HEADER_FILE = "CheckListHeader";
 
     private static final String APP_NAME = "AppName: ";
 
     private static final String VERSION = "Version: ";
 
+    private static final String ALGORITHM = "Algorithm: ";
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    private static final String CHECK_LIST_HEADER = ResourceUtil.readUtf8Str(CHECK_LIST_HEADER_FILE);
+
+    // 文件头行数，解析时跳过
+    private static final long CHECK_LIST_HEADER_LINES = new BufferedReader(new StringReader(CHECK_LIST_HEADER)).lines().count();
+
     /**
      * 计算文件/文件夹crc32
      *
@@ -63,28 +89,131 @@ public class ChecksumUtil {
      * @return crc32
      */
     public static String checksum(String appName, String version, File file) {
+        StringWriter writer = new StringWriter();
+        checksum(appName, version, file, writer);
+        return writer.toString();
+    }
+
+    /**
+     * 计算文件/文件夹crc32并写入校验文件
+     *
+     * @param appName app name
+     * @param version version
+     * @param file file
+     * @param checksumFile 校验文件
+     */
+    public static void checksum(String appName, String version, File file, File checksumFile) {
+        checksumModel(appName, version, file, HashAlgorithm.CRC32, checksumFile);
+    }
+
+    /**
+     * 计算文件/文件夹哈希值并写入校验文件
+     *
+     * @param appName app name
+     * @param version version
+     * @param file file
+     * @param algorithm 哈希算法
+     * @param checksumFile 校验文件
+     * @return 应用文件列表，路径为相对路径并包含文件大小
+     */
+    public static UpdateModel checksumModel(String appName, String version, File file, HashAlgorithm algorithm, File checksumFile) {
+        try (BufferedWriter writer = FileUtil.getWriter(checksumFile, StandardCharsets.UTF_8, false)) {
+            return checksum(appName, version, file, algorithm, writer);
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        }
+    }
+
+    /**
+     * 将已计算好的应用文件列表写入校验文件
+     * - 文件按相对路径排序后写出，与遍历计算的结果一致
+     *
+     * @param updateModel 应用文件列表，路径为相对路径
+     * @param checksumFile 校验文件
+     */
+    public static void writeChecksum(UpdateModel updateModel, File checksumFile) {
+        List<FileModel> fileModels = new ArrayList<>(updateModel.getFiles());
+        fileModels.sort(Comparator.comparing(FileModel::getPath));
+        try (BufferedWriter writer = FileUtil.getWriter(checksumFile, StandardCharsets.UTF_8, false)) {
+            writer.write(checksumHeader(updateModel.getAppName(), updateModel.getVersion(), updateModel.getAlgorithm()));
+            for (FileModel fileModel : fileModels) {
+                writer.append(fileModel.getPath()).append(SEPARATOR).append(fileModel.getHash()).append(LINE_BREAK);
+            }
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        }
+    }
+
+    /**
+     * 计算文件/文件夹crc32并流式写出
+     * - 文件按相对路径排序，在与CPU核数相同的fork-join线程池中并行计算crc32，再按顺序写出
+     *
+     * @param appName app name
+     * @param version version
+     * @param file file
+     * @param writer writer
+     * @return 应用文件列表，路径为相对路径并包含文件大小
+     */
+    public static UpdateModel checksum(String appName, String version, File file, Writer writer) {
+        return checksum(appName, version, file, HashAlgorithm.CRC32, writer);
+    }
+
+    /**
+     * 按指定算法计算文件/文件夹哈希值并流式写出
+     * - 文件按相对路径排序，在与CPU核数相同的fork-join线程池中并行计算哈希值，再按顺序写出
+     *
+     * @param appName app name
+     * @param version version
+     * @param file file
+     * @param algorithm 哈希算法
+     * @param writer writer
+     * @return 应用文件列表，路径为相对路径并包含文件大小
+     */
+    public static UpdateModel checksum(String appName, String version, File file, HashAlgorithm algorithm, Writer writer) {
         Assert.notNull(file);
-        List<FileModel> fileModels;
+        HashAlgorithm hashAlgorithm = HashAlgorithm.orDefault(algorithm);
+        List<File> files;
         if (file.isFile()) {
-            fileModels = CollUtil.newArrayList(crc32FileModel(file));
+            files = CollUtil.newArrayList(file);
         } else {
-            fileModels = FileUtil.loopFiles(file).stream().map(ChecksumUtil::crc32FileModel).collect(Collectors.toList());
-        }
-        StringBuilder sb = new StringBuilder(checksumHeader(appName, version));
-        for (FileModel fileModel : fileModels) {
             // 不计算checklist文件
-            if (Constant.CHECKLIST.equals(fileModel.getName())) {
-                continue;
+            files = FileUtil.loopFiles(file, childFile -> !Constant.CHECKLIST.equals(childFile.getName()));
+        }
+        String rootPath = uniformFilePath(file);
+        List<String> paths = files.stream().map(childFile -> relativePath(rootPath, childFile)).collect(Collectors.toList());
+        // 按相对路径排序，保证输出顺序稳定
+        Integer[] order = new Integer[files.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(paths::get));
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<ForkJoinTask<List<FileModel>>> tasks = new ArrayList<>();
+            for (int from = 0; from < order.length; from += CHECKSUM_BATCH_SIZE) {
+                int to = Math.min(from + CHECKSUM_BATCH_SIZE, order.length);
+                Integer[] batch = Arrays.copyOfRange(order, from, to);
+                tasks.add(pool.submit(() -> Arrays.stream(batch).map(i -> {
+                    File childFile = files.get(i);
+                    return hashFileModel(childFile, hashAlgorithm).setPath(paths.get(i)).setSize(childFile.length());
+                }).collect(Collectors.toList())));
             }
-            String path = fileModel.getPath().substring(uniformFilePath(file).length());
-            if (path.startsWith("/")) {
-                path = path.substring(1);
-            } else if (path.startsWith("./")) {
-                path = path.substring(2);
+            writer.write(checksumHeader(appName, version, hashAlgorithm));
+            List<FileModel> fileModels = new ArrayList<>(order.length);
+            for (ForkJoinTask<List<FileModel>> task : tasks) {
+                for (FileModel fileModel : task.join()) {
+                    writer.append(fileModel.getPath()).append(SEPARATOR).append(fileModel.getHash()).append(LINE_BREAK);
+                    fileModels.add(fileModel);
+                }
             }
-            sb.append(path).append(SEPARATOR).append(fileModel.getCrc32()).append(LINE_BREAK);
+            writer.flush();
+            return new UpdateModel().setAppName(appName).setVersion(version).setAlgorithm(hashAlgorithm).setFiles(fileModels);
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        } finally {
+            pool.shutdownNow();
         }
-        return sb.toString();
     }
 
     /**
@@ -95,8 +224,25 @@ public class ChecksumUtil {
      * @return checksum头部信息
      */
     public static String checksumHeader(String appName, String version) {
-        return ResourceUtil.readUtf8Str(CHECK_LIST_HEADER_FILE) + LINE_BREAK + APP_NAME + Optional.ofNullable(appName).orElse(StrUtil.EMPTY)
+        return checksumHeader(appName, version, HashAlgorithm.CRC32);
+    }
+
+    /**
+     * 生成checksum头部信息
+     * - CRC32清单不写出算法行，与旧版本清单保持一致
+     *
+     * @param appName app name
+     * @param version version
+     * @param algorithm 哈希算法
+     * @return checksum头部信息
+     */
+    public static String checksumHeader(String appName, String version, HashAlgorithm algorithm) {
+        String header = CHECK_LIST_HEADER + LINE_BREAK + APP_NAME + Optional.ofNullable(appName).orElse(StrUtil.EMPTY)
             + LINE_BREAK + VERSION + Optional.ofNullable(version).orElse(StrUtil.EMPTY) + LINE_BREAK;
+        if (HashAlgorithm.orDefault(algorithm) != HashAlgorithm.CRC32) {
+            header += ALGORITHM + algorithm.name() + LINE_BREAK;
+        }
+        return header;
     }
 
     /**
@@ -107,33 +253,36 @@ public class ChecksumUtil {
      */
     public static UpdateModel parseChecksum(String checksum) {
         Assert.notBlank(checksum, () -> new BadRequestException("错误的校验文件"));
-        Scanner scanner = new Scanner(checksum);
+        LineReader reader = new LineReader(checksum);
         UpdateModel updateModel = new UpdateModel();
         try {
             // 跳过文件头
-            long count = ResourceUtil.getUtf8Reader(CHECK_LIST_HEADER_FILE).lines().count();
-            for (int i = 0; i < count; i++) {
-                scanner.nextLine();
+            for (int i = 0; i < CHECK_LIST_HEADER_LINES; i++) {
+                reader.nextLine();
             }
-            String appName = scanner.nextLine().substring(APP_NAME.length());
-            String version = scanner.nextLine().substring(VERSION.length());
+            String appName = reader.nextLine().substring(APP_NAME.length());
+            String version = reader.nextLine().substring(VERSION.length());
             Assert.notBlank(appName, "AppName must not be blank");
             Assert.notBlank(version, "Version must not be blank");
+            HashAlgorithm algorithm = HashAlgorithm.CRC32;
+            if (reader.hasNextLine() && reader.peekLine().startsWith(ALGORITHM)) {
+                algorithm = HashAlgorithm.valueOf(reader.nextLine().substring(ALGORITHM.length()).trim());
+            }
             updateModel.setAppName(appName);
             updateModel.setVersion(version);
+            updateModel.setAlgorithm(algorithm);
         } catch (NoSuchElementException | IllegalArgumentException | IndexOutOfBoundsException exception) {
             log.error(exception.getMessage(), exception);
             throw new BadRequestException("错误的校验文件");
         }
-        List<FileModel> fileModels = CollUtil.newArrayList();
-        while (scanner.hasNextLine()) {
+        List<FileModel> fileModels = new ArrayList<>();
+        while (reader.hasNextLine()) {
             try {
-                String line = scanner.nextLine();
+                String line = reader.nextLine();
                 Assert.notBlank(line);
                 int i = line.lastIndexOf(SEPARATOR);
                 String path = line.substring(0, i);
-                long crc32 = Long.parseLong(line.substring(i + 1));
-                FileModel fileModel = newFileModel(FileUtil.newFile(path)).setCrc32(crc32);
+                FileModel fileModel = setHash(newFileModel(FileUtil.newFile(path)), updateModel.getAlgorithm(), line.substring(i + 1));
                 fileModels.add(fileModel);
             } catch (IndexOutOfBoundsException | IllegalArgumentException exception) {
                 log.error(exception.getMessage(), exception);
@@ -144,14 +293,69 @@ public class ChecksumUtil {
     }
 
     public static FileModel crc32FileModel(File file) {
-        long crc32 = FileUtil.checksumCRC32(file);
-        return newFileModel(file).setCrc32(crc32);
+        return hashFileModel(file, HashAlgorithm.CRC32);
+    }
+
+    public static FileModel hashFileModel(File file, HashAlgorithm algorithm) {
+        return setHash(newFileModel(file), algorithm, hash(file, algorithm));
+    }
+
+    /**
+     * 按指定算法计算文件哈希值
+     *
+     * @param file 文件
+     * @param algorithm 哈希算法
+     * @return 哈希值
+     */
+    public static String hash(File file, HashAlgorithm algorithm) {
+        Hasher hasher = HashAlgorithm.orDefault(algorithm).newHasher();
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream in = FileUtil.getInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                hasher.update(buffer, 0, read);
+            }
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        }
+        return hasher.digest();
+    }
+
+    /**
+     * 获取文件哈希值，兼容只有crc32的旧版本请求
+     *
+     * @param fileModel 文件
+     * @return 哈希值
+     */
+    public static String hashOf(FileModel fileModel) {
+        if (fileModel.getHash() != null) {
+            return fileModel.getHash();
+        }
+        return fileModel.getCrc32() == null ? null : String.valueOf(fileModel.getCrc32());
+    }
+
+    private static FileModel setHash(FileModel fileModel, HashAlgorithm algorithm, String hash) {
+        fileModel.setHash(hash);
+        if (HashAlgorithm.orDefault(algorithm) == HashAlgorithm.CRC32) {
+            fileModel.setCrc32(Long.parseLong(hash));
+        }
+        return fileModel;
     }
 
     private static FileModel newFileModel(File file) {
         return new FileModel().setOption(null).setPath(uniformFilePath(file)).setName(file.getName());
     }
 
+    private static String relativePath(String rootPath, File file) {
+        String path = uniformFilePath(file).substring(rootPath.length());
+        if (path.startsWith("/")) {
+            path = path.substring(1);
+        } else if (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        return path;
+    }
+
     public static String uniformFilePath(File file) {
         String path = file.getPath();
         if (SystemUtil.getOsInfo().isWindows()) {
@@ -159,4 +363,39 @@ public class ChecksumUtil {
         }
         return path;
     }
+
+    /**
+     * 按行读取字符串，替代Scanner的正则匹配
+     */
+    private static class LineReader {
+        private final String text;
+
+        private int position;
+
+        private LineReader(String text) {
+            this.text = text;
+        }
+
+        private boolean hasNextLine() {
+            return position < text.length();
+        }
+
+        private String nextLine() {
+            String line = peekLine();
+            int end = text.indexOf('\n', position);
+            position = end < 0 ? text.length() : end + 1;
+            return line;
+        }
+
+        private String peekLine() {
+            if (!hasNextLine()) {
+                throw new NoSuchElementException("No line found");
+            }
+            int end = text.indexOf('\n', position);
+            if (end < 0) {
+                end = text.length();
+            }
+            return text.substring(position, end > position && text.charAt(end - 1) == '\r' ? end - 1 : end);
+        }
+    }
 }
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.utils;
+
+import com.cxxwl96.updater.api.model.BlockSignature;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.util.HexUtil;
+
+/**
+ * 块增量（rsync算法）工具
+ * - 客户端计算本地文件的块签名（滚动弱校验 + MD5强校验）
+ * - 服务端在新文件上滑动窗口匹配签名，生成 COPY(块序号) / DATA(字节) 指令流
+ * - 客户端根据本地文件和指令流重建新文件
+ * - 指令流格式: { COPY int | DATA int bytes }* END long(文件长度) long(crc32)
+ *
+ * @author cxxwl96
+ * @since 2024/04/24 20:31
+ */
+public class DeltaUtil {
+    public static final int MIN_BLOCK_SIZE = 4 * 1024;
+
+    public static final int MAX_BLOCK_SIZE = 1024 * 1024;
+
+    private static final byte END = 0;
+
+    private static final byte COPY = 1;
+
+    private static final byte DATA = 2;
+
+    // 单条DATA指令的最大长度
+    private static final int MAX_DATA_LENGTH = 64 * 1024;
+
+    // 目标块数量，用于根据文件大小计算块大小
+    private static final long TARGET_BLOCK_COUNT = 16 * 1024;
+
+    /**
+     * 根据文件大小计算块大小: 2的幂，限制在[4KB, 1MB]
+     *
+     * @param fileSize 文件大小
+     * @return 块大小
+     */
+    public static int blockSize(long fileSize) {
+        int blockSize = MIN_BLOCK_SIZE;
+        while (blockSize < MAX_BLOCK_SIZE && (long) blockSize * TARGET_BLOCK_COUNT < fileSize) {
+            blockSize <<= 1;
+        }
+        return blockSize;
+    }
+
+    /**
+     * 计算文件的块签名，不足一个块的尾部不计算
+     *
+     * @param file 文件
+     * @param blockSize 块大小
+     * @return 块签名
+     */
+    public static List<BlockSignature> signatures(File file, int blockSize) {
+        List<BlockSignature> signatures = new ArrayList<>();
+        MessageDigest md5 = md5();
+        byte[] block = new byte[blockSize];
+        try (InputStream in = new BufferedInputStream(FileUtil.getInputStream(file), blockSize)) {
+            int index = 0;
+            while (readFully(in, block) == blockSize) {
+                md5.update(block);
+                signatures.add(new BlockSignature().setIndex(index++)
+                    .setWeak(weak(block, 0, blockSize))
+                    .setStrong(HexUtil.encodeHexStr(md5.digest())));
+            }
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        }
+        return signatures;
+    }
+
+    /**
+     * 根据客户端的块签名生成新文件的增量指令流
+     *
+     * @param file 新文件
+     * @param blockSize 块大小
+     * @param signatures 客户端本地文件的块签名
+     * @param outputStream 指令流输出
+     */
+    public static void delta(File file, int blockSize, List<BlockSignature> signatures, OutputStream outputStream) {
+        // 只匹配完整的块，弱校验 -> 块签名
+        Map<Integer, List<BlockSignature>> weakMap = new HashMap<>();
+        boolean[] tags = new boolean[1 << 16];
+        if (signatures != null) {
+            for (BlockSignature signature : signatures) {
+                weakMap.computeIfAbsent(signature.getWeak(), key -> new ArrayList<>()).add(signature);
+                tags[tag(signature.getWeak())] = true;
+            }
+        }
+        MessageDigest md5 = md5();
+        CRC32 crc32 = new CRC32();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream, MAX_DATA_LENGTH));
+        ByteArrayOutputStream literal = new ByteArrayOutputStream(MAX_DATA_LENGTH);
+        byte[] window = new byte[blockSize];
+        try (InputStream in = new BufferedInputStream(FileUtil.getInputStream(file), MAX_DATA_LENGTH)) {
+            int length = readFully(in, window);
+            crc32.update(window, 0, length);
+            int head = 0;
+            int a = 0;
+            int b = 0;
+            if (length == blockSize) {
+                int weak = weak(window, 0, length);
+                a = weak & 0xffff;
+                b = weak >>> 16;
+            }
+            while (length == blockSize) {
+                int weak = (b << 16) | a;
+                BlockSignature matched = tags[tag(weak)] ? match(weakMap.get(weak), md5, window, head) : null;
+                if (matched != null) {
+                    writeData(out, literal);
+                    out.writeByte(COPY);
+                    out.writeInt(matched.getIndex());
+                    // 匹配成功，窗口整体后移一个块
+                    length = readFully(in, window);
+                    crc32.update(window, 0, length);
+                    head = 0;
+                    if (length == blockSize) {
+                        weak = weak(window, 0, length);
+                        a = weak & 0xffff;
+                        b = weak >>> 16;
+                    }
+                    continue;
+                }
+                // 未匹配，窗口后移一个字节
+                int next = in.read();
+                int out0 = window[head] & 0xff;
+                literal.write(out0);
+                if (literal.size() >= MAX_DATA_LENGTH) {
+                    writeData(out, literal);
+                }
+                if (next < 0) {
+                    // 剩余字节作为数据
+                    writeLiteral(out, literal, window, head + 1, blockSize - head - 1);
+                    writeLiteral(out, literal, window, 0, head);
+                    length = 0;
+                    break;
+                }
+                crc32.update(next);
+                a = (a - out0 + next) & 0xffff;
+                b = (b - blockSize * out0 + a) & 0xffff;
+                window[head] = (byte) next;
+                head = (head + 1) % blockSize;
+            }
+            // 不足一个块的尾部作为数据
+            writeLiteral(out, literal, window, 0, length);
+            writeData(out, literal);
+            out.writeByte(END);
+            out.writeLong(file.length());
+            out.writeLong(crc32.getValue());
+            out.flush();
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        }
+    }
+
+    /**
+     * 根据本地文件和增量指令流重建新文件
+     *
+     * @param baseFile 本地文件
+     * @param blockSize 块大小
+     * @param inputStream 指令流
+     * @param targetFile 重建的新文件
+     * @return 新文件crc32，与指令流中的crc32不一致时抛异常
+     */
+    public static long apply(File baseFile, int blockSize, InputStream inputStream, File targetFile) {
+        CRC32 crc32 = new CRC32();
+        byte[] buffer = new byte[Math.max(blockSize, MAX_DATA_LENGTH)];
+        FileUtil.mkParentDirs(targetFile);
+        try (RandomAccessFile base = new RandomAccessFile(baseFile, "r");
+             DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream, MAX_DATA_LENGTH));
+             OutputStream out = new BufferedOutputStream(FileUtil.getOutputStream(targetFile), MAX_DATA_LENGTH)) {
+            long written = 0;
+            while (true) {
+                byte instruction = in.readByte();
+                if (instruction == END) {
+                    long length = in.readLong();
+                    long expected = in.readLong();
+                    if (length != written || expected != crc32.getValue()) {
+                        throw new IOException("增量文件校验失败: " + targetFile.getPath());
+                    }
+                    return crc32.getValue();
+                }
+                int length;
+                if (instruction == COPY) {
+                    base.seek((long) in.readInt() * blockSize);
+                    length = blockSize;
+                    base.readFully(buffer, 0, length);
+                } else if (instruction == DATA) {
+                    length = in.readInt();
+                    if (length < 0 || length > buffer.length) {
+                        throw new IOException("增量数据长度错误: " + length);
+                    }
+                    in.readFully(buffer, 0, length);
+                } else {
+                    throw new IOException("未知的增量指令: " + instruction);
+                }
+                out.write(buffer, 0, length);
+                crc32.update(buffer, 0, length);
+                written += length;
+            }
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        }
+    }
+
+    private static BlockSignature match(List<BlockSignature> candidates, MessageDigest md5, byte[] window, int head) {
+        if (candidates == null) {
+            return null;
+        }
+        md5.update(window, head, window.length - head);
+        md5.update(window, 0, head);
+        String strong = HexUtil.encodeHexStr(md5.digest());
+        for (BlockSignature candidate : candidates) {
+            if (strong.equals(candidate.getStrong())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 追加数据字节，达到单条DATA指令的最大长度时写出，保证每条DATA指令不超过MAX_DATA_LENGTH
+     */
+    private static void writeLiteral(DataOutputStream out, ByteArrayOutputStream literal, byte[] bytes, int offset, int length)
+        throws IOException {
+        while (length > 0) {
+            int count = Math.min(length, MAX_DATA_LENGTH - literal.size());
+            literal.write(bytes, offset, count);
+            offset += count;
+            length -= count;
+            if (literal.size() >= MAX_DATA_LENGTH) {
+                writeData(out, literal);
+            }
+        }
+    }
+
+    private static void writeData(DataOutputStream out, ByteArrayOutputStream literal) throws IOException {
+        if (literal.size() == 0) {
+            return;
+        }
+        out.writeByte(DATA);
+        out.writeInt(literal.size());
+        literal.writeTo(out);
+        literal.reset();
+    }
+
+    private static int weak(byte[] bytes, int offset, int length) {
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < length; i++) {
+            int value = bytes[offset + i] & 0xff;
+            a += value;
+            b += (length - i) * value;
+        }
+        return ((b & 0xffff) << 16) | (a & 0xffff);
+    }
+
+    private static int tag(int weak) {
+        return (weak ^ (weak >>> 16)) & 0xffff;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = in.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static MessageDigest md5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.utils.hash;
+
+import java.util.zip.Checksum;
+
+/**
+ * 基于Checksum的哈希计算
+ *
+ * @author cxxwl96
+ * @since 2024/04/28 19:45
+ */
+public class ChecksumHasher implements Hasher {
+    private final Checksum checksum;
+
+    // 十六进制位数，为0时输出十进制
+    private final int hexDigits;
+
+    public ChecksumHasher(Checksum checksum, int hexDigits) {
+        this.checksum = checksum;
+        this.hexDigits = hexDigits;
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        checksum.update(bytes, offset, length);
+    }
+
+    @Override
+    public String digest() {
+        long value = checksum.getValue();
+        if (hexDigits == 0) {
+            return String.valueOf(value);
+        }
+        String hex = Long.toHexString(value);
+        StringBuilder sb = new StringBuilder(hexDigits);
+        for (int i = hex.length(); i < hexDigits; i++) {
+            sb.append('0');
+        }
+        return sb.append(hex).toString();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.utils.hash;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C（Castagnoli）
+ * - JDK9+ 优先使用有硬件加速的 java.util.zip.CRC32C，JDK8 使用查表实现
+ *
+ * @author cxxwl96
+ * @since 2024/04/28 19:45
+ */
+public class Crc32c implements Checksum {
+    private static final int POLY = 0x82F63B78;
+
+    private static final int[] TABLE = new int[256];
+
+    private static final Class<?> JDK_CRC32C = jdkCrc32c();
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    /**
+     * 创建CRC32C，优先使用JDK实现
+     *
+     * @return Checksum
+     */
+    public static Checksum create() {
+        if (JDK_CRC32C != null) {
+            try {
+                return (Checksum) JDK_CRC32C.newInstance();
+            } catch (ReflectiveOperationException ignored) {
+            }
+        }
+        return new Crc32c();
+    }
+
+    @Override
+    public void update(int b) {
+        crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xff];
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        int value = crc;
+        for (int i = offset; i < offset + length; i++) {
+            value = (value >>> 8) ^ TABLE[(value ^ bytes[i]) & 0xff];
+        }
+        crc = value;
+    }
+
+    @Override
+    public long getValue() {
+        return (~crc) & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+        crc = 0xFFFFFFFF;
+    }
+
+    private static Class<?> jdkCrc32c() {
+        try {
+            return Class.forName("java.util.zip.CRC32C");
+        } catch (ClassNotFoundException exception) {
+            return null;
+        }
+    }
+}
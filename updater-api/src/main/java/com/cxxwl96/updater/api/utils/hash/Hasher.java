@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.utils.hash;
+
+/**
+ * 流式哈希计算
+ *
+ * @author cxxwl96
+ * @since 2024/04/28 19:45
+ */
+public interface Hasher {
+    /**
+     * 追加数据
+     *
+     * @param bytes 数据
+     * @param offset 偏移
+     * @param length 长度
+     */
+    void update(byte[] bytes, int offset, int length);
+
+    /**
+     * 计算结果
+     *
+     * @return 哈希值的字符串形式
+     */
+    String digest();
+}
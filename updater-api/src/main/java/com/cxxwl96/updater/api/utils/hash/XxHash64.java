@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.utils.hash;
+
+import java.util.zip.Checksum;
+
+/**
+ * xxHash64（seed = 0）
+ *
+ * @author cxxwl96
+ * @since 2024/04/28 19:45
+ */
+public class XxHash64 implements Checksum {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+
+    private static final long P3 = 0x165667B19E3779F9L;
+
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private final byte[] buffer = new byte[32];
+
+    private int bufferSize;
+
+    private long totalLength;
+
+    private long v1;
+
+    private long v2;
+
+    private long v3;
+
+    private long v4;
+
+    public XxHash64() {
+        reset();
+    }
+
+    @Override
+    public void update(int b) {
+        update(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void update(byte[] bytes, int offset, int length) {
+        totalLength += length;
+        int end = offset + length;
+        if (bufferSize > 0) {
+            int fill = Math.min(32 - bufferSize, length);
+            System.arraycopy(bytes, offset, buffer, bufferSize, fill);
+            bufferSize += fill;
+            offset += fill;
+            if (bufferSize < 32) {
+                return;
+            }
+            stripe(buffer, 0);
+            bufferSize = 0;
+        }
+        for (; offset + 32 <= end; offset += 32) {
+            stripe(bytes, offset);
+        }
+        if (offset < end) {
+            System.arraycopy(bytes, offset, buffer, 0, end - offset);
+            bufferSize = end - offset;
+        }
+    }
+
+    @Override
+    public long getValue() {
+        long h;
+        if (totalLength >= 32) {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = P5;
+        }
+        h += totalLength;
+        int i = 0;
+        for (; i + 8 <= bufferSize; i += 8) {
+            h ^= round(0, readLong(buffer, i));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+        }
+        if (i + 4 <= bufferSize) {
+            h ^= (readInt(buffer, i) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            i += 4;
+        }
+        for (; i < bufferSize; i++) {
+            h ^= (buffer[i] & 0xff) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+        }
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    @Override
+    public void reset() {
+        v1 = P1 + P2;
+        v2 = P2;
+        v3 = 0;
+        v4 = -P1;
+        bufferSize = 0;
+        totalLength = 0;
+    }
+
+    private void stripe(byte[] bytes, int offset) {
+        v1 = round(v1, readLong(bytes, offset));
+        v2 = round(v2, readLong(bytes, offset + 8));
+        v3 = round(v3, readLong(bytes, offset + 16));
+        v4 = round(v4, readLong(bytes, offset + 24));
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long mergeRound(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * P1 + P4;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xffL) | (bytes[offset + 1] & 0xffL) << 8 | (bytes[offset + 2] & 0xffL) << 16
+            | (bytes[offset + 3] & 0xffL) << 24 | (bytes[offset + 4] & 0xffL) << 32 | (bytes[offset + 5] & 0xffL) << 40
+            | (bytes[offset + 6] & 0xffL) << 48 | (bytes[offset + 7] & 0xffL) << 56;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.enums;
+
+import com.cxxwl96.updater.api.utils.hash.Hasher;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * HashAlgorithmTest
+ *
+ * @author cxxwl96
+ * @since 2024/05/18 16:05
+ */
+class HashAlgorithmTest {
+    @Test
+    void isHash() {
+        byte[] bytes = "updater".getBytes(StandardCharsets.UTF_8);
+        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+            Hasher hasher = algorithm.newHasher();
+            hasher.update(bytes, 0, bytes.length);
+            String hash = hasher.digest();
+            assertTrue(algorithm.isHash(hash), algorithm + ": " + hash);
+        }
+        assertTrue(HashAlgorithm.CRC32.isHash("4294967295"));
+        assertFalse(HashAlgorithm.CRC32.isHash("4294967296"));
+        assertFalse(HashAlgorithm.isAnyHash(null));
+        assertFalse(HashAlgorithm.isAnyHash(""));
+        assertFalse(HashAlgorithm.isAnyHash("../../x"));
+        assertFalse(HashAlgorithm.isAnyHash("0123456789ABCDEF"));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.api.utils;
+
+import com.cxxwl96.updater.api.model.BlockSignature;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+import cn.hutool.core.io.FileUtil;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * DeltaUtilTest
+ *
+ * @author cxxwl96
+ * @since 2024/05/18 15:20
+ */
+class DeltaUtilTest {
+    @TempDir
+    File tempDir;
+
+    private final Random random = new Random(96);
+
+    @Test
+    void newTailLargerThanDataLength() {
+        byte[] base = randomBytes(100 * 1024);
+        for (int size : new int[] {69000, 69500, 69630, 135000}) {
+            assertRoundTrip(base, randomBytes(size));
+        }
+    }
+
+    @Test
+    void appendedTailLargerThanDataLength() {
+        byte[] base = randomBytes(256 * 1024);
+        byte[] target = new byte[base.length + 200 * 1024 + 123];
+        System.arraycopy(base, 0, target, 0, base.length);
+        System.arraycopy(randomBytes(target.length - base.length), 0, target, base.length, target.length - base.length);
+        assertRoundTrip(base, target);
+    }
+
+    @Test
+    void unchangedAndEmptyFiles() {
+        byte[] base = randomBytes(64 * 1024 + 17);
+        assertRoundTrip(base, base.clone());
+        assertRoundTrip(base, new byte[0]);
+        assertRoundTrip(new byte[0], base);
+    }
+
+    private void assertRoundTrip(byte[] base, byte[] target) {
+        File baseFile = FileUtil.writeBytes(base, new File(tempDir, "base"));
+        File targetFile = FileUtil.writeBytes(target, new File(tempDir, "target"));
+        File rebuiltFile = new File(tempDir, "rebuilt");
+        int blockSize = DeltaUtil.blockSize(base.length);
+        List<BlockSignature> signatures = DeltaUtil.signatures(baseFile, blockSize);
+        ByteArrayOutputStream delta = new ByteArrayOutputStream();
+        DeltaUtil.delta(targetFile, blockSize, signatures, delta);
+        DeltaUtil.apply(baseFile, blockSize, new ByteArrayInputStream(delta.toByteArray()), rebuiltFile);
+        assertArrayEquals(target, FileUtil.readBytes(rebuiltFile));
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
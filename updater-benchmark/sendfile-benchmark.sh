@@ -0,0 +1,102 @@
+#!/bin/bash
+#
+# Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# 下载的sendfile与缓冲区复制对比
+# - 分别以app.sendfile=true/false启动服务端，上传一个直接存储的zip，通过回环地址重复下载
+# - 按/proc/<pid>/stat的utime+stime统计服务端进程在下载期间的CPU时间，换算为每GB的CPU秒数
+# - 需要Linux、curl、zip，服务端先打包: mvn -pl updater-api,updater-server package -DskipTests
+# - 运行: updater-benchmark/sendfile-benchmark.sh [文件大小MB，默认200] [下载次数，默认10] [端口，默认18080]
+# - 可用taskset将服务端和curl限制在指定CPU上运行，如: taskset -c 0 updater-benchmark/sendfile-benchmark.sh
+
+set -e
+
+SIZE_MB=${1:-200}
+COUNT=${2:-10}
+PORT=${3:-18080}
+BASE_DIR=$(cd "$(dirname "$0")/.." && pwd)
+SERVER_JAR="$BASE_DIR/updater-server/target/updater-server-1.0.0.jar"
+JAVA=${JAVA_HOME:+$JAVA_HOME/bin/}java
+WORK_DIR=$(mktemp -d)
+SERVER_PID=
+
+if [ ! -f "$SERVER_JAR" ]; then
+    echo "未找到 $SERVER_JAR，请先执行: mvn -pl updater-api,updater-server package -DskipTests" >&2
+    exit 1
+fi
+
+cleanup() {
+    if [ -n "$SERVER_PID" ]; then
+        kill "$SERVER_PID" 2>/dev/null || true
+        wait "$SERVER_PID" 2>/dev/null || true
+    fi
+    rm -rf "$WORK_DIR"
+}
+trap cleanup EXIT
+
+# 随机数据不可压缩，zip中直接存储，下载即为原样发送文件
+mkdir -p "$WORK_DIR/app"
+head -c $((SIZE_MB * 1024 * 1024)) /dev/urandom > "$WORK_DIR/app/data.bin"
+(cd "$WORK_DIR/app" && zip -q -0 ../app.zip data.bin)
+
+# 进程已使用的CPU时间，单位：时钟周期
+cpu_ticks() {
+    awk '{print $14 + $15}' "/proc/$1/stat"
+}
+
+run() {
+    local sendfile=$1
+    local url="http://localhost:$PORT"
+    "$JAVA" -Xmx512M -jar "$SERVER_JAR" --server.port="$PORT" --app.repository="$WORK_DIR/repo-$sendfile" \
+        --app.sendfile="$sendfile" > "$WORK_DIR/server-$sendfile.log" 2>&1 &
+    SERVER_PID=$!
+    for _ in $(seq 1 60); do
+        curl -s -o /dev/null "$url/repository/bench/latest" && break
+        sleep 1
+    done
+    curl -s -o /dev/null -F appName=bench -F version=1 -F latest=true -F file=@"$WORK_DIR/app.zip" "$url/upload"
+    for _ in $(seq 1 120); do
+        curl -s "$url/repository/bench/latest" | grep -q '"data":"1"' && break
+        sleep 1
+    done
+
+    # 预热一次，不计入统计
+    curl -s -o /dev/null "$url/download/bench/1"
+    local bytes
+    bytes=$(curl -s -o /dev/null -w '%{size_download}' "$url/download/bench/1")
+    local ticks_before start end ticks_after
+    ticks_before=$(cpu_ticks "$SERVER_PID")
+    start=$(date +%s.%N)
+    for _ in $(seq 1 "$COUNT"); do
+        curl -s -o /dev/null "$url/download/bench/1"
+    done
+    end=$(date +%s.%N)
+    ticks_after=$(cpu_ticks "$SERVER_PID")
+
+    awk -v mode="$sendfile" -v ticks=$((ticks_after - ticks_before)) -v hz="$(getconf CLK_TCK)" -v bytes="$bytes" \
+        -v count="$COUNT" -v start="$start" -v end="$end" 'BEGIN {
+        gb = bytes * count / 1024 / 1024 / 1024
+        cpu = ticks / hz
+        printf "sendfile=%-5s %d x %.0f MB: server cpu %.2f s, %.2f cpu-s/GB, wall %.2f s\n", mode, count, bytes / 1024 / 1024, cpu, cpu / gb, end - start
+    }'
+
+    kill "$SERVER_PID"
+    wait "$SERVER_PID" 2>/dev/null || true
+    SERVER_PID=
+}
+
+run true
+run false
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.benchmark;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.utils.hash.Hasher;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 清单哈希算法对比
+ * - 文件大小覆盖应用的常见分布: 配置和脚本等小文件、类库jar、大的资源文件
+ * - 与ChecksumUtil.hash一致，按64KB缓冲区分块计算，数据在内存中，不包含磁盘读取
+ * - 运行: mvn -pl updater-api,updater-benchmark install -DskipTests && java -jar updater-benchmark/target/benchmarks.jar
+ *
+ * @author cxxwl96
+ * @since 2024/05/18 17:10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashAlgorithmBenchmark {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 1KB、64KB、1MB、16MB
+    @Param({"1024", "65536", "1048576", "16777216"})
+    private int size;
+
+    @Param({"CRC32", "CRC32C", "XXHASH64", "SHA256"})
+    private HashAlgorithm algorithm;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        data = new byte[size];
+        new Random(96).nextBytes(data);
+    }
+
+    @Benchmark
+    public String hash() {
+        Hasher hasher = algorithm.newHasher();
+        for (int offset = 0; offset < data.length; offset += BUFFER_SIZE) {
+            hasher.update(data, offset, Math.min(BUFFER_SIZE, data.length - offset));
+        }
+        return hasher.digest();
+    }
+}
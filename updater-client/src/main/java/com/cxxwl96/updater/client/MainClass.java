@@ -16,6 +16,8 @@
 
 package com.cxxwl96.updater.client;
 
+import cn.hutool.core.util.ArrayUtil;
+
 /**
  * MainClass
  *
@@ -24,6 +26,12 @@ package com.cxxwl96.updater.client;
  */
 public class MainClass {
     public static void main(String[] args) {
+        if (ArrayUtil.contains(args, UpdaterCli.HEADLESS)) {
+            // 命令行模式的标准输出只用于结果，控制台只输出警告以上的日志到标准错误，需在创建日志前设置
+            System.setProperty("updater.log.target", "SYSTEM_ERR");
+            System.setProperty("updater.log.level", "WARN");
+            System.exit(UpdaterCli.run(args));
+        }
         UpdaterClient.run(args);
     }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client;
+
+import com.alibaba.fastjson.JSON;
+import com.cxxwl96.updater.api.model.FileModel;
+import com.cxxwl96.updater.api.utils.PrettyUtil;
+import com.cxxwl96.updater.client.model.CheckUpdateResult;
+import com.cxxwl96.updater.client.service.UpdateChecker;
+import com.cxxwl96.updater.client.service.UpdateEngine;
+import com.cxxwl96.updater.client.service.UpdateListener;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import cn.hutool.core.util.ArrayUtil;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 命令行更新
+ * - 不加载JavaFX，与界面使用相同的检查更新和更新引擎，用于无图形界面的环境和启动脚本
+ * - 参数: --headless 使用命令行更新；--check 只检查不更新；--json 以一行JSON输出结果，不输出进度
+ * - 标准输出只输出结果，进度输出到标准错误，日志输出到标准错误和日志文件
+ * - 退出码: 0 已是最新版本或更新成功，1 失败，2 有可用更新（--check）
+ *
+ * @author cxxwl96
+ * @since 2024/05/16 21:15
+ */
+@Slf4j
+public class UpdaterCli implements UpdateListener {
+    public static final String HEADLESS = "--headless";
+
+    private static final String CHECK = "--check";
+
+    private static final String JSON_OUTPUT = "--json";
+
+    // 进度输出间隔。单位：毫秒
+    private static final long PROGRESS_INTERVAL = 500;
+
+    private final boolean checkOnly;
+
+    private final boolean json;
+
+    private final PrintStream out = System.out;
+
+    private final PrintStream err = System.err;
+
+    private long lastProgressTime;
+
+    private boolean progressPrinted;
+
+    private enum Status {
+        LATEST(0),
+        UPDATED(0),
+        FAILED(1),
+        UPDATE_AVAILABLE(2),
+        ;
+
+        @Getter
+        private final int exitCode;
+
+        Status(int exitCode) {
+            this.exitCode = exitCode;
+        }
+    }
+
+    private UpdaterCli(String... args) {
+        this.checkOnly = ArrayUtil.contains(args, CHECK);
+        this.json = ArrayUtil.contains(args, JSON_OUTPUT);
+    }
+
+    /**
+     * 执行命令行更新
+     *
+     * @param args 命令行参数
+     * @return 退出码
+     */
+    public static int run(String... args) {
+        return new UpdaterCli(args).run();
+    }
+
+    private int run() {
+        long start = System.currentTimeMillis();
+        CheckUpdateResult result = null;
+        Status status;
+        String message;
+        try {
+            UpdaterConfig.init();
+            result = new UpdateChecker().check();
+            if (!result.isNeedUpdate()) {
+                status = Status.LATEST;
+                message = "已是最新版本";
+            } else if (checkOnly) {
+                status = Status.UPDATE_AVAILABLE;
+                message = String.format("有可用更新: %d个文件，总%s", result.getModifyFileModels().size(),
+                    PrettyUtil.prettySize(result.getTotalSize()));
+            } else {
+                new UpdateEngine(result, UpdaterConfig.parallelism, this).run();
+                status = Status.UPDATED;
+                message = "更新成功";
+            }
+        } catch (Exception exception) {
+            log.error(exception.getMessage(), exception);
+            status = Status.FAILED;
+            message = exception.getMessage();
+        }
+        if (progressPrinted) {
+            err.println();
+        }
+        print(status, message, result, System.currentTimeMillis() - start);
+        return status.getExitCode();
+    }
+
+    private void print(Status status, String message, CheckUpdateResult result, long elapsed) {
+        if (!json) {
+            String version = result == null ? "" : String.format(" [%s -> %s]", result.getOldVersion(), result.getNewVersion());
+            out.println(message + version);
+            return;
+        }
+        Map<String, Object> output = new LinkedHashMap<>();
+        output.put("status", status);
+        output.put("exitCode", status.getExitCode());
+        output.put("message", message);
+        if (result != null) {
+            output.put("appName", result.getAppName());
+            output.put("oldVersion", result.getOldVersion());
+            output.put("newVersion", result.getNewVersion());
+            output.put("files", result.getModifyFileModels().size());
+            output.put("totalSize", result.getTotalSize());
+        }
+        output.put("elapsed", elapsed);
+        out.println(JSON.toJSONString(output));
+    }
+
+    @Override
+    public void onFileStart(FileModel fileModel) {
+    }
+
+    @Override
+    public void onFileProgress(FileModel fileModel, long total, long progressSize) {
+    }
+
+    @Override
+    public void onFileFinish(FileModel fileModel, String detail) {
+    }
+
+    @Override
+    public void onFileVerifyFailed(FileModel fileModel, int attempt) {
+        err.printf("%n校验失败，重新下载: %s%n", fileModel.getPath());
+    }
+
+    @Override
+    public synchronized void onProgress(int finishedFiles, int totalFiles, long transferredBytes, long totalBytes) {
+        long now = System.currentTimeMillis();
+        if (json || (now - lastProgressTime < PROGRESS_INTERVAL && finishedFiles < totalFiles)) {
+            return;
+        }
+        lastProgressTime = now;
+        int percent = totalBytes > 0 ? (int) (transferredBytes * 100 / totalBytes) : finishedFiles * 100 / Math.max(totalFiles, 1);
+        err.printf("\r%d/%d个文件 %s/%s %d%%", finishedFiles, totalFiles, PrettyUtil.prettySize(transferredBytes, 1),
+            PrettyUtil.prettySize(totalBytes, 1), percent);
+        progressPrinted = true;
+    }
+}
@@ -16,34 +16,13 @@
 
 package com.cxxwl96.updater.client;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.TypeReference;
-import com.cxxwl96.updater.api.exception.BadRequestException;
-import com.cxxwl96.updater.api.model.Constant;
-import com.cxxwl96.updater.api.model.FileModel;
-import com.cxxwl96.updater.api.model.Result;
-import com.cxxwl96.updater.api.model.UpdateModel;
-import com.cxxwl96.updater.api.utils.ChecksumUtil;
 import com.cxxwl96.updater.client.model.CheckUpdateResult;
-import com.cxxwl96.updater.client.model.PropertyKeys;
+import com.cxxwl96.updater.client.service.UpdateChecker;
 import com.cxxwl96.updater.client.views.controller.CheckUpdateController;
 import com.cxxwl96.updater.client.views.controller.ConfirmUpdateController;
 import com.cxxwl96.updater.client.views.controller.LatestController;
 import com.cxxwl96.updater.client.views.utils.FXMLUtil;
 
-import java.io.File;
-import java.util.List;
-import java.util.Optional;
-import java.util.Properties;
-import java.util.stream.Collectors;
-
-import cn.hutool.core.collection.CollUtil;
-import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.lang.Assert;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.http.HttpResponse;
-import cn.hutool.http.HttpUtil;
-import cn.hutool.system.SystemUtil;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.control.Alert;
@@ -58,14 +37,6 @@ import lombok.extern.slf4j.Slf4j;
  */
 @Slf4j
 public class UpdaterClient extends Application {
-    public static String host = "";
-
-    public static String appPath = "./";
-
-    public static String appName = "";
-
-    public static String appVersion = "";
-
     public static void run(String... args) {
         // 启动javafx应用
         Application.launch(UpdaterClient.class, args);
@@ -73,7 +44,7 @@ public class UpdaterClient extends Application {
 
     @Override
     public void start(Stage primaryStage) {
-        initEnv();
+        UpdaterConfig.init();
 
         Stage checkUpdateStage = FXMLUtil.loadStage(new CheckUpdateController());
         checkUpdateStage.show();
@@ -82,7 +53,7 @@ public class UpdaterClient extends Application {
         new Thread(() -> {
             CheckUpdateResult result;
             try {
-                result = checkUpdate();
+                result = new UpdateChecker().check();
             } catch (Exception exception) {
                 log.error(exception.getMessage(), exception);
                 Platform.runLater(() -> {
@@ -100,72 +71,4 @@ public class UpdaterClient extends Application {
             }
         }).start();
     }
-
-    private void initEnv() {
-        Properties props = SystemUtil.getProps();
-        Optional.ofNullable(props.get(PropertyKeys.HOST)).map(Object::toString).ifPresent(val -> UpdaterClient.host = val);
-        Optional.ofNullable(props.get(PropertyKeys.APP_PATH)).map(Object::toString).ifPresent(val -> UpdaterClient.appPath = val);
-        log.info("{}={}", PropertyKeys.HOST, host);
-        log.info("{}={}", PropertyKeys.APP_PATH, appPath);
-        Assert.notBlank(host, "Host is blank");
-        Assert.notBlank(appPath, "AppPath is blank");
-    }
-
-    private void initAppInfo() {
-        Properties props = SystemUtil.getProps();
-        Optional.ofNullable(props.get(PropertyKeys.APP_NAME)).map(Object::toString).ifPresent(val -> UpdaterClient.appName = val);
-        Optional.ofNullable(props.get(PropertyKeys.APP_VERSION)).map(Object::toString).ifPresent(val -> UpdaterClient.appVersion = val);
-        log.info("{}={}", PropertyKeys.APP_NAME, appName);
-        log.info("{}={}", PropertyKeys.APP_VERSION, appVersion);
-        Assert.notBlank(appName, "AppName is blank");
-        Assert.notBlank(appVersion, "AppVersion is blank");
-    }
-
-    private CheckUpdateResult checkUpdate() {
-        File checksumFile = FileUtil.newFile(UpdaterClient.appPath + Constant.CHECKLIST);
-        if (!checksumFile.exists()) {
-            log.warn("没有找到CHECKLIST文件, 将自动生成CHECKLIST文件: {}", checksumFile.getAbsolutePath());
-            initAppInfo();
-            String checksumHeader = ChecksumUtil.checksumHeader(appName, appVersion);
-            FileUtil.writeUtf8String(checksumHeader, checksumFile);
-        }
-        Assert.isTrue(checksumFile.exists(), () -> new BadRequestException("检查更新失败，没有找到CHECKLIST文件"));
-
-        String url = UpdaterClient.host + "/update/check";
-        UpdateModel requestBody = ChecksumUtil.parseChecksum(FileUtil.readUtf8String(checksumFile));
-
-        try (HttpResponse response = HttpUtil.createPost(url).body(JSON.toJSONString(requestBody)).execute()) {
-            Assert.isTrue(response.isOk(), () -> {
-                log.error("请求服务器异常, response: {}", response);
-                try {
-                    Result<?> result = JSON.parseObject(response.body(), Result.class);
-                    return new BadRequestException(result);
-                } catch (Throwable throwable) {
-                    return new BadRequestException("请求服务器异常");
-                }
-            });
-            Result<UpdateModel> responseBody = JSON.parseObject(response.body(), new TypeReference<Result<UpdateModel>>() {
-            });
-            Assert.isTrue(responseBody.isSuccess(), () -> new BadRequestException(responseBody.getMsg()));
-
-            UpdateModel updateModel = responseBody.getData();
-            List<FileModel> modifyFileModels = updateModel.getFiles()
-                .stream()
-                .filter(fileModel -> fileModel.getOption() != null)
-                .collect(Collectors.toList());
-            long totalSize = modifyFileModels.stream().mapToLong(FileModel::getSize).sum();
-
-            String oldVersion = requestBody.getVersion();
-            String newVersion = updateModel.getVersion();
-            CheckUpdateResult result = new CheckUpdateResult();
-            // 版本相同且没有需要变更的文件则无需更新
-            result.setNeedUpdate(!StrUtil.equals(oldVersion, newVersion) || CollUtil.isNotEmpty(modifyFileModels));
-            result.setAppName(requestBody.getAppName());
-            result.setOldVersion(oldVersion);
-            result.setNewVersion(newVersion);
-            result.setModifyFileModels(modifyFileModels);
-            result.setTotalSize(totalSize);
-            return result;
-        }
-    }
-}
\ No newline at end of file
+}
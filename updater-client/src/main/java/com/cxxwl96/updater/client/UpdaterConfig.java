@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client;
+
+import com.cxxwl96.updater.client.model.PropertyKeys;
+import com.cxxwl96.updater.client.transport.HttpTransport;
+
+import java.util.Optional;
+import java.util.Properties;
+
+import cn.hutool.core.lang.Assert;
+import cn.hutool.system.SystemUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 更新配置
+ * - 从系统属性读取，界面和命令行共用，不依赖JavaFX
+ *
+ * @author cxxwl96
+ * @since 2024/05/16 20:41
+ */
+@Slf4j
+public class UpdaterConfig {
+    public static String host = "";
+
+    public static String appPath = "./";
+
+    public static String appName = "";
+
+    public static String appVersion = "";
+
+    // 大于该大小的覆盖文件使用块增量更新。单位：Byte
+    public static long deltaThreshold = 1024 * 1024;
+
+    // 同时更新的文件数
+    public static int parallelism = 4;
+
+    // 大于等于该大小的文件分段并行下载。单位：Byte
+    public static long segmentThreshold = 64 * 1024 * 1024;
+
+    // 单个文件分段下载的分段数，即同时使用的连接数
+    public static int segments = 4;
+
+    // 每个主机的最大HTTP连接数，空闲连接保持复用
+    public static int httpMaxConnections = 8;
+
+    // HTTP连接超时时间。单位：毫秒
+    public static int httpConnectTimeout = 5000;
+
+    // HTTP读取超时时间。单位：毫秒
+    public static int httpReadTimeout = 30000;
+
+    // 校验修复模式，检查更新时扫描本地文件的真实状态，而不是信任CHECKLIST
+    public static boolean repair = false;
+
+    /**
+     * 从系统属性读取配置
+     */
+    public static void init() {
+        Properties props = SystemUtil.getProps();
+        Optional.ofNullable(props.get(PropertyKeys.HOST)).map(Object::toString).ifPresent(val -> UpdaterConfig.host = val);
+        Optional.ofNullable(props.get(PropertyKeys.APP_PATH)).map(Object::toString).ifPresent(val -> UpdaterConfig.appPath = val);
+        Optional.ofNullable(props.get(PropertyKeys.DELTA_THRESHOLD))
+            .map(Object::toString)
+            .ifPresent(val -> UpdaterConfig.deltaThreshold = Long.parseLong(val));
+        Optional.ofNullable(props.get(PropertyKeys.PARALLELISM))
+            .map(Object::toString)
+            .ifPresent(val -> UpdaterConfig.parallelism = Integer.parseInt(val));
+        Optional.ofNullable(props.get(PropertyKeys.SEGMENT_THRESHOLD))
+            .map(Object::toString)
+            .ifPresent(val -> UpdaterConfig.segmentThreshold = Long.parseLong(val));
+        Optional.ofNullable(props.get(PropertyKeys.SEGMENTS))
+            .map(Object::toString)
+            .ifPresent(val -> UpdaterConfig.segments = Integer.parseInt(val));
+        Optional.ofNullable(props.get(PropertyKeys.HTTP_MAX_CONNECTIONS))
+            .map(Object::toString)
+            .ifPresent(val -> UpdaterConfig.httpMaxConnections = Integer.parseInt(val));
+        Optional.ofNullable(props.get(PropertyKeys.HTTP_CONNECT_TIMEOUT))
+            .map(Object::toString)
+            .ifPresent(val -> UpdaterConfig.httpConnectTimeout = Integer.parseInt(val));
+        Optional.ofNullable(props.get(PropertyKeys.HTTP_READ_TIMEOUT))
+            .map(Object::toString)
+            .ifPresent(val -> UpdaterConfig.httpReadTimeout = Integer.parseInt(val));
+        Optional.ofNullable(props.get(PropertyKeys.REPAIR))
+            .map(Object::toString)
+            .ifPresent(val -> UpdaterConfig.repair = Boolean.parseBoolean(val));
+        log.info("{}={}", PropertyKeys.HOST, host);
+        log.info("{}={}", PropertyKeys.APP_PATH, appPath);
+        log.info("{}={}", PropertyKeys.DELTA_THRESHOLD, deltaThreshold);
+        log.info("{}={}", PropertyKeys.PARALLELISM, parallelism);
+        log.info("{}={}", PropertyKeys.SEGMENT_THRESHOLD, segmentThreshold);
+        log.info("{}={}", PropertyKeys.SEGMENTS, segments);
+        log.info("{}={}", PropertyKeys.HTTP_MAX_CONNECTIONS, httpMaxConnections);
+        log.info("{}={}", PropertyKeys.HTTP_CONNECT_TIMEOUT, httpConnectTimeout);
+        log.info("{}={}", PropertyKeys.HTTP_READ_TIMEOUT, httpReadTimeout);
+        log.info("{}={}", PropertyKeys.REPAIR, repair);
+        Assert.notBlank(host, "Host is blank");
+        Assert.notBlank(appPath, "AppPath is blank");
+        HttpTransport.configure(httpMaxConnections, httpConnectTimeout, httpReadTimeout);
+    }
+
+    /**
+     * 从系统属性读取应用信息，本地没有CHECKLIST时使用
+     */
+    public static void initAppInfo() {
+        Properties props = SystemUtil.getProps();
+        Optional.ofNullable(props.get(PropertyKeys.APP_NAME)).map(Object::toString).ifPresent(val -> UpdaterConfig.appName = val);
+        Optional.ofNullable(props.get(PropertyKeys.APP_VERSION)).map(Object::toString).ifPresent(val -> UpdaterConfig.appVersion = val);
+        log.info("{}={}", PropertyKeys.APP_NAME, appName);
+        log.info("{}={}", PropertyKeys.APP_VERSION, appVersion);
+        Assert.notBlank(appName, "AppName is blank");
+        Assert.notBlank(appVersion, "AppVersion is blank");
+    }
+}
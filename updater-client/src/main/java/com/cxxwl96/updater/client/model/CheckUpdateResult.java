@@ -16,9 +16,11 @@
 
 package com.cxxwl96.updater.client.model;
 
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
 import com.cxxwl96.updater.api.model.FileModel;
 
 import java.util.List;
+import java.util.Map;
 
 import lombok.Data;
 
@@ -41,4 +43,10 @@ public class CheckUpdateResult {
     private List<FileModel> modifyFileModels;
 
     private long totalSize;
+
+    // 新版本清单的哈希算法
+    private HashAlgorithm algorithm;
+
+    // 本地文件路径 -> 哈希值
+    private Map<String, String> localChecksums;
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 单个文件的更新进度
+ * - 更新线程只修改字段，界面按固定帧率读取并渲染可见的行
+ * - 不生成equals/hashCode，ListView按对象本身区分各行，字段变化时不影响查找和选中
+ *
+ * @author cxxwl96
+ * @since 2024/05/15 21:03
+ */
+@Getter
+@Setter
+@RequiredArgsConstructor
+public class ProgressItem {
+    // 文件相对应用根目录的路径
+    private final String path;
+
+    // 总大小，未开始传输时为-1。单位：Byte
+    private volatile long total = -1;
+
+    // 已传输大小。单位：Byte
+    private volatile long transferred;
+
+    private volatile boolean finished;
+
+    // 说明文字，不为空时代替传输大小显示，如补丁、校验结果
+    private volatile String detail;
+
+    public double getProgress() {
+        if (finished) {
+            return 1;
+        }
+        if (total < 0) {
+            return 0;
+        }
+        return total > 0 ? Math.min(transferred * 1.0 / total, 1) : 1;
+    }
+}
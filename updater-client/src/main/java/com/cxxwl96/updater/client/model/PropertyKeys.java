@@ -30,4 +30,20 @@ public class PropertyKeys {
     public static final String APP_NAME = "updater.appName";
 
     public static final String APP_VERSION = "updater.appVersion";
+
+    public static final String DELTA_THRESHOLD = "updater.deltaThreshold";
+
+    public static final String PARALLELISM = "updater.parallelism";
+
+    public static final String SEGMENT_THRESHOLD = "updater.segmentThreshold";
+
+    public static final String SEGMENTS = "updater.segments";
+
+    public static final String HTTP_MAX_CONNECTIONS = "updater.http.maxConnections";
+
+    public static final String HTTP_CONNECT_TIMEOUT = "updater.http.connectTimeout";
+
+    public static final String HTTP_READ_TIMEOUT = "updater.http.readTimeout";
+
+    public static final String REPAIR = "updater.repair";
 }
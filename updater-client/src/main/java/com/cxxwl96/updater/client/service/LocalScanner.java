@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client.service;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.model.FileModel;
+import com.cxxwl96.updater.api.model.UpdateModel;
+import com.cxxwl96.updater.api.utils.ChecksumUtil;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 本地文件扫描
+ * - 按CHECKLIST中的路径读取本地文件的真实状态，发现被删除或被修改的文件
+ * - 在与CPU核数相同的fork-join线程池中并行获取文件属性，只对缓存未命中的文件计算哈希值
+ * - 缓存保存在{appPath}/.update/scan-cache，以路径、大小、最后修改时间对应哈希值，大小或修改时间变化时重新计算
+ * - 修改时间距扫描开始不足RACY_INTERVAL的文件可能在计算后又被修改，不写入缓存
+ * - CHECKLIST以外的文件不属于更新的范围，不扫描，避免服务端将用户自己的文件标记为删除
+ *
+ * @author cxxwl96
+ * @since 2024/05/14 20:18
+ */
+@Slf4j
+public class LocalScanner {
+    private static final String CACHE_FILE = "scan-cache";
+
+    private static final int SCAN_BATCH_SIZE = 256;
+
+    // 文件系统修改时间的精度。单位：毫秒
+    private static final long RACY_INTERVAL = 2000;
+
+    private final File appDir;
+
+    private final File cacheFile;
+
+    private final HashAlgorithm algorithm;
+
+    public LocalScanner(String appPath, HashAlgorithm algorithm) {
+        this.appDir = FileUtil.newFile(appPath);
+        this.cacheFile = FileUtil.file(appDir, StagingArea.STAGING_DIR + "/" + CACHE_FILE);
+        this.algorithm = HashAlgorithm.orDefault(algorithm);
+    }
+
+    /**
+     * 扫描本地文件，得到真实的应用文件列表
+     *
+     * @param checklist 本地CHECKLIST
+     * @return 应用文件列表，不存在的文件不在列表中
+     */
+    public UpdateModel scan(UpdateModel checklist) {
+        long start = System.currentTimeMillis();
+        Map<String, CacheEntry> cache = readCache();
+        List<String> paths = checklist.getFiles().stream().map(FileModel::getPath).collect(Collectors.toList());
+
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        List<CacheEntry> entries = new ArrayList<>(paths.size());
+        try {
+            List<ForkJoinTask<List<CacheEntry>>> tasks = new ArrayList<>();
+            for (int from = 0; from < paths.size(); from += SCAN_BATCH_SIZE) {
+                List<String> batch = paths.subList(from, Math.min(from + SCAN_BATCH_SIZE, paths.size()));
+                tasks.add(pool.submit(() -> {
+                    List<CacheEntry> batchEntries = new ArrayList<>(batch.size());
+                    for (String path : batch) {
+                        CacheEntry entry = scanFile(path, cache.get(path));
+                        if (entry != null) {
+                            batchEntries.add(entry);
+                        }
+                    }
+                    return batchEntries;
+                }));
+            }
+            for (ForkJoinTask<List<CacheEntry>> task : tasks) {
+                entries.addAll(task.join());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Map<String, String> checklistHashes = new HashMap<>();
+        for (FileModel fileModel : checklist.getFiles()) {
+            checklistHashes.put(fileModel.getPath(), ChecksumUtil.hashOf(fileModel));
+        }
+        List<FileModel> fileModels = new ArrayList<>(entries.size());
+        int modified = 0;
+        int hashed = 0;
+        for (CacheEntry entry : entries) {
+            fileModels.add(entry.toFileModel(algorithm));
+            if (!entry.hash.equals(checklistHashes.get(entry.path))) {
+                log.info("本地文件已被修改: {}", entry.path);
+                modified++;
+            }
+            if (entry != cache.get(entry.path)) {
+                hashed++;
+            }
+        }
+        log.info("扫描本地文件完成: 共{}个文件，缺失{}个，已修改{}个，计算哈希值{}个，耗时{}ms", paths.size(), paths.size() - entries.size(),
+            modified, hashed, System.currentTimeMillis() - start);
+        if (hashed > 0 || entries.size() != cache.size()) {
+            writeCache(entries, start);
+        }
+        return new UpdateModel().setAppName(checklist.getAppName())
+            .setVersion(checklist.getVersion())
+            .setAlgorithm(checklist.getAlgorithm())
+            .setFiles(fileModels);
+    }
+
+    private CacheEntry scanFile(String path, CacheEntry cached) {
+        // FileUtil.file会检查路径穿越并获取规范路径，每个文件多一次文件系统调用
+        File file = new File(appDir, path);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (NoSuchFileException exception) {
+            log.info("本地文件已被删除: {}", path);
+            return null;
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        }
+        if (!attributes.isRegularFile()) {
+            log.info("本地文件已被删除: {}", path);
+            return null;
+        }
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            return cached;
+        }
+        return new CacheEntry(path, size, lastModified, ChecksumUtil.hash(file, algorithm));
+    }
+
+    private Map<String, CacheEntry> readCache() {
+        Map<String, CacheEntry> cache = new HashMap<>();
+        if (!cacheFile.isFile()) {
+            return cache;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(cacheFile.toPath(), StandardCharsets.UTF_8)) {
+            // 首行为哈希算法，算法变化时缓存失效
+            if (!algorithm.name().equals(reader.readLine())) {
+                return cache;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                CacheEntry entry = CacheEntry.parse(line);
+                if (entry != null) {
+                    cache.put(entry.path, entry);
+                }
+            }
+        } catch (IOException exception) {
+            log.warn("读取扫描缓存失败: {}", exception.getMessage());
+            cache.clear();
+        }
+        return cache;
+    }
+
+    private void writeCache(List<CacheEntry> entries, long start) {
+        File tempFile = FileUtil.file(cacheFile.getParentFile(), CACHE_FILE + ".tmp");
+        FileUtil.mkParentDirs(tempFile);
+        try {
+            try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+                writer.write(algorithm.name());
+                writer.newLine();
+                for (CacheEntry entry : entries) {
+                    if (entry.lastModified > start - RACY_INTERVAL) {
+                        continue;
+                    }
+                    writer.write(entry.toLine());
+                    writer.newLine();
+                }
+            }
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException exception) {
+            // 缓存写入失败只影响下次扫描的速度
+            log.warn("写入扫描缓存失败: {}", exception.getMessage());
+        }
+    }
+
+    private static class CacheEntry {
+        private final String path;
+
+        private final long size;
+
+        private final long lastModified;
+
+        private final String hash;
+
+        private CacheEntry(String path, long size, long lastModified, String hash) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+
+        /**
+         * 解析缓存行: {size}\t{lastModified}\t{hash}\t{path}
+         */
+        private static CacheEntry parse(String line) {
+            int i = line.indexOf('\t');
+            int j = line.indexOf('\t', i + 1);
+            int k = line.indexOf('\t', j + 1);
+            if (i < 0 || j < 0 || k < 0) {
+                return null;
+            }
+            try {
+                return new CacheEntry(line.substring(k + 1), Long.parseLong(line.substring(0, i)),
+                    Long.parseLong(line.substring(i + 1, j)), line.substring(j + 1, k));
+            } catch (NumberFormatException exception) {
+                return null;
+            }
+        }
+
+        private String toLine() {
+            return size + "\t" + lastModified + "\t" + hash + "\t" + path;
+        }
+
+        private FileModel toFileModel(HashAlgorithm algorithm) {
+            FileModel fileModel = new FileModel().setOption(null)
+                .setPath(path)
+                .setName(FileUtil.getName(path))
+                .setSize(size)
+                .setHash(hash);
+            if (algorithm == HashAlgorithm.CRC32) {
+                fileModel.setCrc32(Long.parseLong(hash));
+            }
+            return fileModel;
+        }
+    }
+}
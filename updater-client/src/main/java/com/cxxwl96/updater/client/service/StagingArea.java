@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client.service;
+
+import com.cxxwl96.updater.api.enums.FileOption;
+import com.cxxwl96.updater.api.model.Constant;
+import com.cxxwl96.updater.api.model.FileModel;
+import com.cxxwl96.updater.api.utils.ChecksumUtil;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 更新暂存区
+ * - 更新的文件先写入{appPath}/.update/{version}/files，不直接覆盖正在使用的文件
+ * - 每个文件下载时已按清单校验，暂存后追加一行日志，再次更新时跳过日志中已完成的文件，未完成的.part文件继续续传
+ * - 全部文件暂存完成后逐个原子重命名到应用目录，再删除需要删除的文件，最后替换CHECKLIST。
+ *   中途退出时CHECKLIST仍是旧版本，下次检查更新得到相同的更新计划，日志中已替换的文件不再重复下载
+ * - 日志格式: S\t{hash}\t{size}\t{path} 表示已暂存，A\t{path} 表示已替换到应用目录，清单没有哈希值时hash为-
+ *
+ * @author cxxwl96
+ * @since 2024/05/12 19:36
+ */
+@Slf4j
+public class StagingArea {
+    public static final String STAGING_DIR = ".update";
+
+    private static final String FILES_DIR = "files";
+
+    private static final String JOURNAL = "journal";
+
+    private static final String STAGED = "S";
+
+    private static final String APPLIED = "A";
+
+    private static final String NO_HASH = "-";
+
+    private final File appDir;
+
+    private final File stagingDir;
+
+    private final File filesDir;
+
+    private final File journalFile;
+
+    // 路径 -> 已暂存的文件
+    private final Map<String, StagedFile> staged = new ConcurrentHashMap<>();
+
+    // 已替换到应用目录的路径
+    private final Set<String> applied = ConcurrentHashMap.newKeySet();
+
+    public StagingArea(String appPath, String version) {
+        this.appDir = FileUtil.newFile(appPath);
+        this.stagingDir = FileUtil.file(appDir, STAGING_DIR + "/" + version);
+        this.filesDir = FileUtil.file(stagingDir, FILES_DIR);
+        this.journalFile = FileUtil.file(stagingDir, JOURNAL);
+    }
+
+    /**
+     * 打开暂存区，读取上次未完成的更新日志，删除其他版本的暂存文件
+     */
+    public void open() {
+        File[] versionDirs = FileUtil.file(appDir, STAGING_DIR).listFiles();
+        if (versionDirs != null) {
+            for (File versionDir : versionDirs) {
+                // 暂存目录下的文件为其他用途，如扫描缓存
+                if (versionDir.isDirectory() && !versionDir.equals(stagingDir)) {
+                    log.info("删除过期的暂存目录: {}", versionDir.getName());
+                    FileUtil.del(versionDir);
+                }
+            }
+        }
+        if (!journalFile.isFile()) {
+            return;
+        }
+        for (String line : FileUtil.readUtf8Lines(journalFile)) {
+            String[] values = line.split("\t", 4);
+            if (STAGED.equals(values[0]) && values.length == 4) {
+                staged.put(values[3], new StagedFile(values[1], Long.parseLong(values[2])));
+            } else if (APPLIED.equals(values[0]) && values.length == 2) {
+                applied.add(values[1]);
+            }
+            // 异常退出时最后一行可能不完整，忽略
+        }
+        log.info("继续未完成的更新: 已暂存{}个文件，已替换{}个文件", staged.size(), applied.size());
+    }
+
+    /**
+     * 获取文件的暂存位置
+     *
+     * @param path 文件相对应用根目录的路径
+     * @return 暂存文件
+     */
+    public File stagedFile(String path) {
+        return FileUtil.file(filesDir, path);
+    }
+
+    /**
+     * 文件是否已在上次更新中暂存或替换完成
+     *
+     * @param fileModel 需要更新的文件
+     * @return 是否已完成
+     */
+    public boolean isDone(FileModel fileModel) {
+        String path = fileModel.getPath();
+        if (applied.contains(path)) {
+            return true;
+        }
+        StagedFile stagedFile = staged.get(path);
+        if (stagedFile == null) {
+            return false;
+        }
+        File file = stagedFile(path);
+        return file.isFile() && file.length() == stagedFile.size && Objects.equals(fileModel.getSize(), stagedFile.size)
+            && hashOf(fileModel).equals(stagedFile.hash);
+    }
+
+    /**
+     * 记录文件已暂存，文件在写入时已按清单校验，这里不再读取文件
+     *
+     * @param fileModel 需要更新的文件
+     */
+    public void commit(FileModel fileModel) {
+        String path = fileModel.getPath();
+        if (isDone(fileModel)) {
+            return;
+        }
+        long size = stagedFile(path).length();
+        String hash = hashOf(fileModel);
+        staged.put(path, new StagedFile(hash, size));
+        append(StrUtil.join("\t", STAGED, hash, size, path));
+    }
+
+    /**
+     * 将暂存的文件替换到应用目录
+     * - 先替换普通文件，再删除文件，最后替换CHECKLIST
+     *
+     * @param fileModels 需要更新的文件
+     */
+    public void apply(List<FileModel> fileModels) {
+        FileModel checklist = null;
+        for (FileModel fileModel : fileModels) {
+            if (fileModel.getOption() == FileOption.DELETE) {
+                continue;
+            }
+            if (Constant.CHECKLIST.equals(fileModel.getPath())) {
+                checklist = fileModel;
+                continue;
+            }
+            applyFile(fileModel.getPath());
+        }
+        for (FileModel fileModel : fileModels) {
+            if (fileModel.getOption() == FileOption.DELETE) {
+                File file = FileUtil.file(appDir, fileModel.getPath());
+                if (file.exists()) {
+                    FileUtil.del(file);
+                }
+            }
+        }
+        // CHECKLIST决定下次检查更新的结果，必须最后替换
+        if (checklist != null) {
+            applyFile(checklist.getPath());
+        }
+        FileUtil.del(stagingDir);
+        File rootDir = stagingDir.getParentFile();
+        if (FileUtil.isDirEmpty(rootDir)) {
+            FileUtil.del(rootDir);
+        }
+        log.info("更新文件已全部替换");
+    }
+
+    private void applyFile(String path) {
+        if (applied.contains(path)) {
+            return;
+        }
+        File source = stagedFile(path);
+        File target = FileUtil.file(appDir, path);
+        FileUtil.mkParentDirs(target);
+        try {
+            try {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        }
+        applied.add(path);
+        append(StrUtil.join("\t", APPLIED, path));
+    }
+
+    private static String hashOf(FileModel fileModel) {
+        return StrUtil.blankToDefault(ChecksumUtil.hashOf(fileModel), NO_HASH);
+    }
+
+    private synchronized void append(String line) {
+        FileUtil.mkParentDirs(journalFile);
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getFD().sync();
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        }
+    }
+
+    private static class StagedFile {
+        private final String hash;
+
+        private final long size;
+
+        private StagedFile(String hash, long size) {
+            this.hash = hash;
+            this.size = size;
+        }
+    }
+}
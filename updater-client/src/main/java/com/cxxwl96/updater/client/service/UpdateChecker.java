@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client.service;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.TypeReference;
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.exception.BadRequestException;
+import com.cxxwl96.updater.api.model.Constant;
+import com.cxxwl96.updater.api.model.FileModel;
+import com.cxxwl96.updater.api.model.Result;
+import com.cxxwl96.updater.api.model.UpdateModel;
+import com.cxxwl96.updater.api.utils.ChecksumUtil;
+import com.cxxwl96.updater.client.UpdaterConfig;
+import com.cxxwl96.updater.client.model.CheckUpdateResult;
+import com.cxxwl96.updater.client.transport.HttpTransport;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.lang.Assert;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.core.util.URLUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 检查更新
+ * - 读取本地CHECKLIST上报服务端，得到需要更新的文件，校验修复模式下上报本地文件的真实状态
+ * - 本地版本已是最新版本时只请求最新版本号，不上报文件列表，启动脚本每次启动前调用也不会有明显延迟
+ * - 界面和命令行共用，不依赖JavaFX
+ *
+ * @author cxxwl96
+ * @since 2024/05/16 20:52
+ */
+@Slf4j
+public class UpdateChecker {
+    /**
+     * 检查更新
+     *
+     * @return 检查结果
+     */
+    public CheckUpdateResult check() {
+        File checksumFile = FileUtil.newFile(UpdaterConfig.appPath + Constant.CHECKLIST);
+        if (!checksumFile.exists()) {
+            log.warn("没有找到CHECKLIST文件, 将自动生成CHECKLIST文件: {}", checksumFile.getAbsolutePath());
+            UpdaterConfig.initAppInfo();
+            String checksumHeader = ChecksumUtil.checksumHeader(UpdaterConfig.appName, UpdaterConfig.appVersion);
+            FileUtil.writeUtf8String(checksumHeader, checksumFile);
+        }
+        Assert.isTrue(checksumFile.exists(), () -> new BadRequestException("检查更新失败，没有找到CHECKLIST文件"));
+
+        String url = UpdaterConfig.host + "/update/check";
+        UpdateModel requestBody = ChecksumUtil.parseChecksum(FileUtil.readUtf8String(checksumFile));
+        if (UpdaterConfig.repair) {
+            // 被删除或修改的文件按实际状态上报，由服务端重新下发
+            requestBody = new LocalScanner(UpdaterConfig.appPath, requestBody.getAlgorithm()).scan(requestBody);
+        } else if (CollUtil.isNotEmpty(requestBody.getFiles())
+            && StrUtil.equals(requestBody.getVersion(), latestVersion(requestBody.getAppName()))) {
+            // CHECKLIST最后替换，版本与最新版本相同说明已完整更新到该版本
+            return latestResult(requestBody);
+        }
+
+        try (HttpTransport.Response response = HttpTransport.execute(HttpTransport.post(url).body(JSON.toJSONString(requestBody)))) {
+            Assert.isTrue(response.isOk(), () -> {
+                log.error("请求服务器异常, response: {}", response);
+                try {
+                    Result<?> result = JSON.parseObject(response.body(), Result.class);
+                    return new BadRequestException(result);
+                } catch (Throwable throwable) {
+                    return new BadRequestException("请求服务器异常");
+                }
+            });
+            Result<UpdateModel> responseBody = JSON.parseObject(response.body(), new TypeReference<Result<UpdateModel>>() {
+            });
+            Assert.isTrue(responseBody.isSuccess(), () -> new BadRequestException(responseBody.getMsg()));
+
+            UpdateModel updateModel = responseBody.getData();
+            List<FileModel> modifyFileModels = updateModel.getFiles()
+                .stream()
+                .filter(fileModel -> fileModel.getOption() != null)
+                .collect(Collectors.toList());
+            // 提供补丁的文件按补丁大小计算
+            long totalSize = modifyFileModels.stream()
+                .mapToLong(fileModel -> Optional.ofNullable(fileModel.getPatchSize()).orElse(fileModel.getSize()))
+                .sum();
+            Map<String, String> localChecksums = requestBody.getFiles()
+                .stream()
+                .collect(Collectors.toMap(FileModel::getPath, FileModel::getHash, (hash1, hash2) -> hash2));
+
+            String oldVersion = requestBody.getVersion();
+            String newVersion = updateModel.getVersion();
+            CheckUpdateResult result = new CheckUpdateResult();
+            // 版本相同且没有需要变更的文件则无需更新
+            result.setNeedUpdate(!StrUtil.equals(oldVersion, newVersion) || CollUtil.isNotEmpty(modifyFileModels));
+            result.setAppName(requestBody.getAppName());
+            result.setOldVersion(oldVersion);
+            result.setNewVersion(newVersion);
+            result.setModifyFileModels(modifyFileModels);
+            result.setTotalSize(totalSize);
+            result.setAlgorithm(HashAlgorithm.orDefault(updateModel.getAlgorithm()));
+            result.setLocalChecksums(localChecksums);
+            return result;
+        }
+    }
+
+    /**
+     * 获取服务端最新版本，失败时返回null，由完整的检查更新报告错误
+     */
+    private String latestVersion(String appName) {
+        String url = UpdaterConfig.host + "/repository/" + URLUtil.encodeAll(appName) + "/latest";
+        try (HttpTransport.Response response = HttpTransport.execute(HttpTransport.get(url))) {
+            if (!response.isOk()) {
+                return null;
+            }
+            Result<String> responseBody = JSON.parseObject(response.body(), new TypeReference<Result<String>>() {
+            });
+            return responseBody.isSuccess() ? responseBody.getData() : null;
+        } catch (Exception exception) {
+            log.warn("获取最新版本失败: {}", exception.getMessage());
+            return null;
+        }
+    }
+
+    private CheckUpdateResult latestResult(UpdateModel checklist) {
+        log.info("已是最新版本: {} {}", checklist.getAppName(), checklist.getVersion());
+        CheckUpdateResult result = new CheckUpdateResult();
+        result.setNeedUpdate(false);
+        result.setAppName(checklist.getAppName());
+        result.setOldVersion(checklist.getVersion());
+        result.setNewVersion(checklist.getVersion());
+        result.setModifyFileModels(new ArrayList<>());
+        result.setAlgorithm(HashAlgorithm.orDefault(checklist.getAlgorithm()));
+        result.setLocalChecksums(new HashMap<>());
+        return result;
+    }
+}
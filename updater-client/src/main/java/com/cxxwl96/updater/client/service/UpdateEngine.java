@@ -0,0 +1,414 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client.service;
+
+import com.alibaba.fastjson.JSON;
+import com.cxxwl96.updater.api.enums.FileOption;
+import com.cxxwl96.updater.api.exception.ChecksumMismatchException;
+import com.cxxwl96.updater.api.model.BatchRequest;
+import com.cxxwl96.updater.api.model.FileModel;
+import com.cxxwl96.updater.api.utils.BatchUtil;
+import com.cxxwl96.updater.api.utils.ChecksumUtil;
+import com.cxxwl96.updater.api.utils.PrettyUtil;
+import com.cxxwl96.updater.client.UpdaterConfig;
+import com.cxxwl96.updater.client.model.CheckUpdateResult;
+import com.cxxwl96.updater.client.transport.HttpTransport;
+import com.cxxwl96.updater.client.utils.DeltaUpdateUtil;
+import com.cxxwl96.updater.client.utils.DownloadUtil;
+import com.cxxwl96.updater.client.utils.SegmentDownloadUtil;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.StreamProgress;
+import cn.hutool.core.lang.Assert;
+import cn.hutool.core.thread.ThreadUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 并行更新引擎
+ * - 删除的文件先处理，其余文件按大小从大到小排序，由固定数量的线程同时更新，大文件尽早开始
+ * - 大文件单独更新: 补丁 -> 块增量 -> 断点续传下载，超过阈值的文件分段并行下载
+ * - 小文件合并为批量请求，每个批次作为一个任务
+ * - 总进度按已完成的文件数和字节数计算，与文件完成的顺序无关
+ * - 文件先写入暂存区，全部完成后再替换到应用目录，中途退出后再次更新时跳过已暂存的文件
+ * - 下载时边写入边按清单校验，校验失败的文件单独重新下载
+ *
+ * @author cxxwl96
+ * @since 2024/05/09 21:05
+ */
+@Slf4j
+public class UpdateEngine {
+    // 小于该大小的文件合并为批量请求。单位：Byte
+    private static final long BATCH_FILE_SIZE = 1024 * 1024;
+
+    // 单个批量请求最多的文件数
+    private static final int BATCH_MAX_FILES = 500;
+
+    // 单个批量请求最大的总大小。单位：Byte
+    private static final long BATCH_MAX_BYTES = 16 * 1024 * 1024;
+
+    // 单个文件校验失败时的最大下载次数
+    private static final int MAX_VERIFY_ATTEMPTS = 3;
+
+    private final CheckUpdateResult result;
+
+    private final int parallelism;
+
+    private final UpdateListener listener;
+
+    private final String baseUrl;
+
+    private final int totalFiles;
+
+    private final long totalBytes;
+
+    private final AtomicInteger finishedFiles = new AtomicInteger();
+
+    private final AtomicLong transferredBytes = new AtomicLong();
+
+    // 文件路径 -> 进度，批量失败后单独下载时沿用同一个进度
+    private final Map<String, FileProgress> progresses = new ConcurrentHashMap<>();
+
+    private final StagingArea staging;
+
+    private volatile ExecutorService executor;
+
+    public UpdateEngine(CheckUpdateResult result, int parallelism, UpdateListener listener) {
+        this.result = result;
+        this.parallelism = Math.max(parallelism, 1);
+        this.listener = listener;
+        this.baseUrl = String.format("%s/update/%s/%s", UpdaterConfig.host, result.getAppName(), result.getNewVersion());
+        this.totalFiles = result.getModifyFileModels().size();
+        this.totalBytes = result.getModifyFileModels()
+            .stream()
+            .filter(fileModel -> fileModel.getOption() != FileOption.DELETE)
+            .mapToLong(UpdateEngine::sizeOf)
+            .sum();
+        this.staging = new StagingArea(UpdaterConfig.appPath, result.getNewVersion());
+    }
+
+    /**
+     * 执行更新，所有文件更新完成后返回
+     *
+     * @throws IORuntimeException 被取消时cause为ClosedByInterruptException
+     */
+    public void run() {
+        staging.open();
+        List<Task> tasks = new ArrayList<>();
+        List<FileModel> batchFiles = new ArrayList<>();
+        for (FileModel fileModel : result.getModifyFileModels()) {
+            File file = localFile(fileModel);
+            // 删除的文件在替换暂存文件时处理
+            if (fileModel.getOption() == FileOption.DELETE) {
+                finishFile();
+                continue;
+            }
+            // 上次更新中已暂存的文件
+            if (staging.isDone(fileModel)) {
+                FileProgress progress = progressOf(fileModel);
+                progress.start();
+                progress.finish("已下载");
+                continue;
+            }
+            if (sizeOf(fileModel) >= BATCH_FILE_SIZE || canPatch(fileModel, file) || canDelta(fileModel, file)) {
+                tasks.add(new Task(sizeOf(fileModel), () -> updateFile(fileModel)));
+            } else {
+                batchFiles.add(fileModel);
+            }
+        }
+        tasks.addAll(batchTasks(batchFiles));
+        // 大文件先开始，避免最后只剩一个大文件在下载
+        tasks.sort(Comparator.comparingLong((Task task) -> task.size).reversed());
+        log.info("更新{}个文件，{}个任务，并行数{}", totalFiles, tasks.size(), parallelism);
+
+        executor = Executors.newFixedThreadPool(parallelism, ThreadUtil.newNamedThreadFactory("update-", true));
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+        for (Task task : tasks) {
+            completionService.submit(task.runnable, null);
+        }
+        executor.shutdown();
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                completionService.take().get();
+            }
+        } catch (InterruptedException exception) {
+            cancel();
+            Thread.currentThread().interrupt();
+            throw new IORuntimeException(new ClosedByInterruptException());
+        } catch (ExecutionException exception) {
+            // 任一任务失败则取消其余任务
+            cancel();
+            Throwable cause = exception.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IORuntimeException(cause);
+        }
+        staging.apply(result.getModifyFileModels());
+    }
+
+    /**
+     * 取消更新，中断正在进行的下载
+     */
+    public void cancel() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Task> batchTasks(List<FileModel> fileModels) {
+        List<Task> tasks = new ArrayList<>();
+        List<FileModel> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (FileModel fileModel : fileModels) {
+            batch.add(fileModel);
+            batchBytes += sizeOf(fileModel);
+            if (batch.size() >= BATCH_MAX_FILES || batchBytes >= BATCH_MAX_BYTES) {
+                List<FileModel> files = batch;
+                tasks.add(new Task(batchBytes, () -> downloadBatch(files)));
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            List<FileModel> files = batch;
+            tasks.add(new Task(batchBytes, () -> downloadBatch(files)));
+        }
+        return tasks;
+    }
+
+    private void updateFile(FileModel fileModel) {
+        File file = localFile(fileModel);
+        FileProgress progress = progressOf(fileModel);
+        progress.start();
+
+        // 覆盖文件优先使用服务端提供的补丁
+        if (canPatch(fileModel, file)) {
+            log.info("补丁更新文件: {} {}", fileModel.getPath(), PrettyUtil.prettySize(fileModel.getPatchSize()));
+            String localHash = result.getLocalChecksums().get(fileModel.getPath());
+            if (DeltaUpdateUtil.patch(baseUrl, fileModel, file, stagedFile(fileModel), localHash, result.getAlgorithm())) {
+                log.info("补丁更新文件成功: {}", fileModel.getPath());
+                progress.finish("补丁 " + PrettyUtil.prettySize(fileModel.getPatchSize(), 1));
+                return;
+            }
+        }
+
+        // 大文件覆盖时使用块增量更新，失败则回退到完整下载
+        if (canDelta(fileModel, file)) {
+            log.info("增量更新文件: {} {}", fileModel.getPath(), PrettyUtil.prettySize(fileModel.getSize()));
+            if (DeltaUpdateUtil.update(baseUrl, fileModel, file, stagedFile(fileModel), result.getAlgorithm())) {
+                log.info("增量更新文件成功: {}", fileModel.getPath());
+                progress.finish("增量 " + PrettyUtil.prettySize(fileModel.getSize(), 1));
+                return;
+            }
+        }
+        download(fileModel);
+    }
+
+    private void download(FileModel fileModel) {
+        String url;
+        try {
+            url = baseUrl + "?pathRelativeToContent=" + URLEncoder.encode(fileModel.getPath(), StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException exception) {
+            throw new IORuntimeException(exception);
+        }
+        log.info("更新文件: {} {}", fileModel.getPath(), PrettyUtil.prettySize(fileModel.getSize()));
+        long size = fileModel.getSize() == null ? -1 : fileModel.getSize();
+        String expectedHash = ChecksumUtil.hashOf(fileModel);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                // 大文件分段并行下载，单个连接的吞吐受限于延迟
+                if (size >= UpdaterConfig.segmentThreshold && UpdaterConfig.segments > 1) {
+                    SegmentDownloadUtil.download(url, stagedFile(fileModel), size, result.getAlgorithm(), expectedHash,
+                        UpdaterConfig.segments, progressOf(fileModel));
+                } else {
+                    DownloadUtil.download(url, stagedFile(fileModel), size, result.getAlgorithm(), expectedHash, progressOf(fileModel));
+                }
+                return;
+            } catch (ChecksumMismatchException exception) {
+                log.warn("{}，第{}次下载", exception.getMessage(), attempt);
+                listener.onFileVerifyFailed(fileModel, attempt);
+                if (attempt >= MAX_VERIFY_ATTEMPTS) {
+                    throw exception;
+                }
+            }
+        }
+    }
+
+    /**
+     * 一次请求下载多个文件，失败时剩余的文件逐个下载
+     */
+    private void downloadBatch(List<FileModel> fileModels) {
+        Map<String, FileModel> pending = new LinkedHashMap<>();
+        for (FileModel fileModel : fileModels) {
+            pending.put(fileModel.getPath(), fileModel);
+        }
+        log.info("批量更新文件: {}个", pending.size());
+        BatchRequest request = new BatchRequest().setPaths(new ArrayList<>(pending.keySet()));
+        try (HttpTransport.Response response = HttpTransport.execute(HttpTransport.post(baseUrl + "/batch").body(JSON.toJSONString(request)))) {
+            if (!response.isOk()) {
+                throw new IORuntimeException("批量更新请求失败: " + response.getStatus());
+            }
+            BatchUtil.read(response.bodyStream(), path -> {
+                Assert.isTrue(pending.containsKey(path), "未请求的文件: {}", path);
+                return stagedFile(pending.get(path));
+            }, path -> new StreamProgress() {
+                private final FileProgress progress = progressOf(pending.get(path));
+
+                @Override
+                public void start() {
+                    progress.start();
+                }
+
+                @Override
+                public void progress(long total, long progressSize) {
+                    progress.progress(total, progressSize);
+                }
+
+                @Override
+                public void finish() {
+                    progress.finish();
+                    pending.remove(path);
+                }
+            }, result.getAlgorithm(), path -> ChecksumUtil.hashOf(pending.get(path)));
+            // 流完整读取后仍未完成的文件校验失败
+            for (FileModel fileModel : pending.values()) {
+                listener.onFileVerifyFailed(fileModel, 1);
+            }
+        } catch (Exception exception) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new IORuntimeException(new ClosedByInterruptException());
+            }
+            log.warn("批量更新失败，剩余{}个文件逐个下载: {}", pending.size(), exception.getMessage());
+        }
+        for (FileModel fileModel : new ArrayList<>(pending.values())) {
+            download(fileModel);
+        }
+    }
+
+    private boolean canPatch(FileModel fileModel, File file) {
+        return fileModel.getOption() == FileOption.OVERWRITE && fileModel.getPatchSize() != null
+            && result.getLocalChecksums().get(fileModel.getPath()) != null && file.isFile();
+    }
+
+    private boolean canDelta(FileModel fileModel, File file) {
+        return fileModel.getOption() == FileOption.OVERWRITE && file.isFile() && sizeOf(fileModel) >= UpdaterConfig.deltaThreshold;
+    }
+
+    private FileProgress progressOf(FileModel fileModel) {
+        return progresses.computeIfAbsent(fileModel.getPath(), key -> new FileProgress(fileModel));
+    }
+
+    private void finishFile() {
+        finishedFiles.incrementAndGet();
+        fireProgress();
+    }
+
+    /**
+     * 通知总进度，加锁后读取最新值，多个线程通知时总进度不会回退
+     */
+    private synchronized void fireProgress() {
+        listener.onProgress(finishedFiles.get(), totalFiles, transferredBytes.get(), totalBytes);
+    }
+
+    private static File localFile(FileModel fileModel) {
+        return FileUtil.newFile(UpdaterConfig.appPath + fileModel.getPath());
+    }
+
+    private File stagedFile(FileModel fileModel) {
+        return staging.stagedFile(fileModel.getPath());
+    }
+
+    private static long sizeOf(FileModel fileModel) {
+        return fileModel.getSize() == null ? 0 : fileModel.getSize();
+    }
+
+    private static class Task {
+        private final long size;
+
+        private final Runnable runnable;
+
+        private Task(long size, Runnable runnable) {
+            this.size = size;
+            this.runnable = runnable;
+        }
+    }
+
+    /**
+     * 单个文件的进度，按增量累加到总进度，重新下载时进度回退也能正确计算
+     */
+    private class FileProgress implements StreamProgress {
+        private final FileModel fileModel;
+
+        private boolean started;
+
+        private long reported;
+
+        private FileProgress(FileModel fileModel) {
+            this.fileModel = fileModel;
+        }
+
+        @Override
+        public synchronized void start() {
+            if (!started) {
+                started = true;
+                listener.onFileStart(fileModel);
+            }
+        }
+
+        @Override
+        public synchronized void progress(long total, long progressSize) {
+            transferredBytes.addAndGet(progressSize - reported);
+            reported = progressSize;
+            listener.onFileProgress(fileModel, total, progressSize);
+            fireProgress();
+        }
+
+        @Override
+        public void finish() {
+            finish(null);
+        }
+
+        private synchronized void finish(String detail) {
+            staging.commit(fileModel);
+            // 各更新方式都在写入时按清单校验，清单有哈希值即已校验
+            boolean verified = ChecksumUtil.hashOf(fileModel) != null;
+            log.info("更新文件成功: {}{}", fileModel.getPath(), verified ? " 已校验" : "");
+            transferredBytes.addAndGet(sizeOf(fileModel) - reported);
+            reported = sizeOf(fileModel);
+            String text = detail == null ? PrettyUtil.prettySize(sizeOf(fileModel), 1) : detail;
+            listener.onFileFinish(fileModel, verified ? text + " 已校验" : text);
+            finishFile();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client.service;
+
+import com.cxxwl96.updater.api.model.FileModel;
+
+/**
+ * 更新进度监听，回调在下载线程中执行
+ *
+ * @author cxxwl96
+ * @since 2024/05/09 21:05
+ */
+public interface UpdateListener {
+    /**
+     * 开始更新文件
+     *
+     * @param fileModel 文件
+     */
+    void onFileStart(FileModel fileModel);
+
+    /**
+     * 文件下载进度
+     *
+     * @param fileModel 文件
+     * @param total 总大小，未知时为-1
+     * @param progressSize 已下载大小
+     */
+    void onFileProgress(FileModel fileModel, long total, long progressSize);
+
+    /**
+     * 文件更新完成
+     *
+     * @param fileModel 文件
+     * @param detail 更新方式和校验结果说明
+     */
+    void onFileFinish(FileModel fileModel, String detail);
+
+    /**
+     * 文件与清单校验不一致，将重新下载
+     *
+     * @param fileModel 文件
+     * @param attempt 第几次下载
+     */
+    void onFileVerifyFailed(FileModel fileModel, int attempt);
+
+    /**
+     * 总进度，按已完成的文件和字节数计算，与文件完成的顺序无关
+     *
+     * @param finishedFiles 已完成的文件数，包括删除的文件
+     * @param totalFiles 总文件数
+     * @param transferredBytes 已更新的字节数
+     * @param totalBytes 总字节数
+     */
+    void onProgress(int finishedFiles, int totalFiles, long transferredBytes, long totalBytes);
+}
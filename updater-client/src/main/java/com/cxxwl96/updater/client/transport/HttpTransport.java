@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client.transport;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.util.CharsetUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.core.util.URLUtil;
+import cn.hutool.http.Header;
+import cn.hutool.http.HttpRequest;
+import cn.hutool.http.HttpResponse;
+import cn.hutool.http.HttpUtil;
+import cn.hutool.http.Method;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * HTTP传输层，同一主机的请求复用连接
+ * - 基于JDK HttpURLConnection的keep-alive连接缓存，HTTPS连接连同TLS会话一起复用，一次更新只需少量握手
+ * - hutool的HttpResponse#close和HttpResponse#body会调用disconnect，连接被直接关闭；这里只读取和关闭响应流，由JDK读完剩余内容后缓存连接
+ * - 每个主机的并发连接数由信号量限制，与连接缓存的空闲连接数一致，请求结束后连接都能被缓存
+ * - 统一设置连接超时和读取超时
+ *
+ * @author cxxwl96
+ * @since 2024/05/10 20:40
+ */
+@Slf4j
+public class HttpTransport {
+    // 每个主机的最大连接数
+    private static volatile int maxConnections = 8;
+
+    // 连接超时时间。单位：毫秒
+    private static volatile int connectTimeout = 5000;
+
+    // 读取超时时间。单位：毫秒
+    private static volatile int readTimeout = 30000;
+
+    // 主机 -> 连接许可
+    private static final Map<String, Semaphore> PERMITS = new ConcurrentHashMap<>();
+
+    private HttpTransport() {
+    }
+
+    /**
+     * 配置传输层，需要在第一次请求前调用，JDK的连接缓存大小只在第一次使用时读取
+     *
+     * @param maxConnections 每个主机的最大连接数
+     * @param connectTimeout 连接超时时间，单位：毫秒
+     * @param readTimeout 读取超时时间，单位：毫秒
+     */
+    public static void configure(int maxConnections, int connectTimeout, int readTimeout) {
+        HttpTransport.maxConnections = Math.max(maxConnections, 1);
+        HttpTransport.connectTimeout = connectTimeout;
+        HttpTransport.readTimeout = readTimeout;
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(HttpTransport.maxConnections));
+        PERMITS.clear();
+    }
+
+    public static HttpRequest get(String url) {
+        return init(HttpUtil.createGet(url));
+    }
+
+    public static HttpRequest post(String url) {
+        return init(HttpUtil.createPost(url));
+    }
+
+    public static HttpRequest head(String url) {
+        return init(HttpUtil.createRequest(Method.HEAD, url));
+    }
+
+    /**
+     * 执行请求，主机的连接数已满时等待其他请求结束
+     *
+     * @param request 请求
+     * @return 响应，使用完后需要关闭
+     * @throws IORuntimeException 等待时被中断，cause为ClosedByInterruptException
+     */
+    public static Response execute(HttpRequest request) {
+        Semaphore permits = PERMITS.computeIfAbsent(hostOf(request.getUrl()), host -> new Semaphore(maxConnections, true));
+        try {
+            permits.acquire();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IORuntimeException(new ClosedByInterruptException());
+        }
+        try {
+            return new Response(request.executeAsync(), permits);
+        } catch (RuntimeException exception) {
+            permits.release();
+            throw exception;
+        }
+    }
+
+    private static HttpRequest init(HttpRequest request) {
+        return request.keepAlive(true).setConnectionTimeout(connectTimeout).setReadTimeout(readTimeout);
+    }
+
+    private static String hostOf(String url) {
+        URL u = URLUtil.url(url);
+        return u.getProtocol() + "://" + u.getAuthority();
+    }
+
+    /**
+     * HTTP响应，关闭时释放连接许可，连接交给JDK缓存而不是断开
+     */
+    public static class Response implements Closeable {
+        private final HttpResponse response;
+
+        private final Semaphore permits;
+
+        private boolean closed;
+
+        private Response(HttpResponse response, Semaphore permits) {
+            this.response = response;
+            this.permits = permits;
+        }
+
+        public int getStatus() {
+            return response.getStatus();
+        }
+
+        public boolean isOk() {
+            return response.isOk();
+        }
+
+        public String header(String name) {
+            return response.header(name);
+        }
+
+        public String header(Header name) {
+            return response.header(name);
+        }
+
+        public long contentLength() {
+            return response.contentLength();
+        }
+
+        public InputStream bodyStream() {
+            return response.bodyStream();
+        }
+
+        /**
+         * 读取响应体
+         * - 不能调用hutool的HttpResponse#body，异步响应会在读取后调用close断开连接，连接无法被缓存
+         *
+         * @return 响应体
+         */
+        public String body() {
+            return IoUtil.read(response.bodyStream(), CharsetUtil.charset(StrUtil.blankToDefault(response.charset(), CharsetUtil.UTF_8)));
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            // 未读完的响应体由JDK读完后缓存连接，剩余内容过多时JDK会直接关闭连接
+            IoUtil.close(response.bodyStream());
+            permits.release();
+        }
+
+        @Override
+        public String toString() {
+            return response.toString();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client.utils;
+
+import com.alibaba.fastjson.JSON;
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.model.DeltaRequest;
+import com.cxxwl96.updater.api.model.FileModel;
+import com.cxxwl96.updater.api.utils.ChecksumUtil;
+import com.cxxwl96.updater.api.utils.DeltaUtil;
+import com.cxxwl96.updater.client.transport.HttpTransport;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+import cn.hutool.core.io.FileUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 块增量更新
+ * - 补丁: 服务端预先生成的旧版本到新版本的增量指令流
+ * - 块增量: 上传本地文件的块签名，服务端只返回缺失的数据和复制指令，在本地重建文件
+ *
+ * @author cxxwl96
+ * @since 2024/04/24 20:31
+ */
+@Slf4j
+public class DeltaUpdateUtil {
+    private static final String TEMP_SUFFIX = ".delta";
+
+    /**
+     * 使用服务端预先生成的补丁更新文件
+     *
+     * @param baseUrl 版本更新地址: {host}/update/{appName}/{version}
+     * @param fileModel 需要更新的文件
+     * @param file 本地文件，即补丁的基准文件
+     * @param targetFile 更新后的文件写入位置
+     * @param baseHash 本地文件哈希值
+     * @param algorithm 新版本清单的哈希算法
+     * @return 是否更新成功，失败时本地文件保持不变
+     */
+    public static boolean patch(String baseUrl, FileModel fileModel, File file, File targetFile, String baseHash,
+        HashAlgorithm algorithm) {
+        File tempFile = FileUtil.newFile(targetFile.getPath() + TEMP_SUFFIX);
+        FileUtil.mkParentDirs(tempFile);
+        try {
+            String url = baseUrl + "/patch?pathRelativeToContent=" + URLEncoder.encode(fileModel.getPath(), StandardCharsets.UTF_8.name())
+                + "&baseHash=" + baseHash;
+            try (HttpTransport.Response response = HttpTransport.execute(HttpTransport.get(url))) {
+                if (!response.isOk()) {
+                    log.warn("补丁下载失败: {} {}", fileModel.getPath(), response.getStatus());
+                    return false;
+                }
+                DataInputStream in = new DataInputStream(response.bodyStream());
+                int blockSize = in.readInt();
+                // 块大小决定重建时的缓冲区大小，与服务端块增量接口的限制一致，防止异常的补丁导致内存溢出
+                if (blockSize < DeltaUtil.MIN_BLOCK_SIZE || blockSize > DeltaUtil.MAX_BLOCK_SIZE) {
+                    log.warn("补丁块大小错误: {} {}", fileModel.getPath(), blockSize);
+                    return false;
+                }
+                return applyAndReplace(fileModel, algorithm, targetFile, tempFile, DeltaUtil.apply(file, blockSize, in, tempFile));
+            }
+        } catch (Exception exception) {
+            log.warn("补丁更新失败: {} {}", fileModel.getPath(), exception.getMessage());
+            FileUtil.del(tempFile);
+            return false;
+        }
+    }
+
+    /**
+     * 块增量更新文件
+     *
+     * @param baseUrl 版本更新地址: {host}/update/{appName}/{version}
+     * @param fileModel 需要更新的文件
+     * @param file 本地文件
+     * @param targetFile 更新后的文件写入位置
+     * @param algorithm 新版本清单的哈希算法
+     * @return 是否更新成功，失败时本地文件保持不变
+     */
+    public static boolean update(String baseUrl, FileModel fileModel, File file, File targetFile, HashAlgorithm algorithm) {
+        int blockSize = DeltaUtil.blockSize(fileModel.getSize());
+        DeltaRequest request = new DeltaRequest().setPath(fileModel.getPath())
+            .setBlockSize(blockSize)
+            .setSignatures(DeltaUtil.signatures(file, blockSize));
+        File tempFile = FileUtil.newFile(targetFile.getPath() + TEMP_SUFFIX);
+        FileUtil.mkParentDirs(tempFile);
+        try (HttpTransport.Response response = HttpTransport.execute(HttpTransport.post(baseUrl + "/delta").body(JSON.toJSONString(request)))) {
+            if (!response.isOk()) {
+                log.warn("增量更新请求失败: {} {}", fileModel.getPath(), response.getStatus());
+                return false;
+            }
+            return applyAndReplace(fileModel, algorithm, targetFile, tempFile,
+                DeltaUtil.apply(file, blockSize, response.bodyStream(), tempFile));
+        } catch (Exception exception) {
+            log.warn("增量更新失败: {} {}", fileModel.getPath(), exception.getMessage());
+            FileUtil.del(tempFile);
+            return false;
+        }
+    }
+
+    private static boolean applyAndReplace(FileModel fileModel, HashAlgorithm algorithm, File targetFile, File tempFile, long crc32) {
+        // 指令流末尾的crc32只能保证传输完整，还需要与清单比较确认重建结果就是新版本文件，清单中缺少校验值时视为失败
+        boolean matched;
+        if (algorithm == HashAlgorithm.CRC32) {
+            matched = fileModel.getCrc32() != null && crc32 == fileModel.getCrc32();
+        } else {
+            // 非CRC32清单需要按清单算法重新计算一遍
+            matched = fileModel.getHash() != null && fileModel.getHash().equals(ChecksumUtil.hash(tempFile, algorithm));
+        }
+        if (!matched) {
+            log.warn("增量更新校验失败: {}", fileModel.getPath());
+            FileUtil.del(tempFile);
+            return false;
+        }
+        FileUtil.move(tempFile, targetFile, true);
+        return true;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client.utils;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.exception.ChecksumMismatchException;
+import com.cxxwl96.updater.api.utils.hash.Hasher;
+import com.cxxwl96.updater.client.transport.HttpTransport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.StreamProgress;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.http.Header;
+import cn.hutool.http.HttpException;
+import cn.hutool.http.HttpRequest;
+import cn.hutool.http.HttpStatus;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 断点续传下载
+ * - 下载内容先写入{file}.part，完成后再替换目标文件
+ * - 已存在的.part文件通过Range请求续传，If-Range携带服务端文件的最后修改时间，服务端文件变化时重新下载
+ * - 连接中断时从已下载的位置重试
+ * - 首次请求接受gzip编码，由HttpResponse透明解码后写入，.part中始终为解码后的内容；
+ *   续传时请求identity编码，使Range的偏移与已写入的内容一致
+ * - 写入时按清单的哈希算法计算哈希值，与清单不一致时删除.part文件，不替换目标文件。
+ *   续传时只补算.part中已有部分的哈希值，完整的文件不会被再读一遍
+ *
+ * @author cxxwl96
+ * @since 2024/05/06 22:15
+ */
+@Slf4j
+public class DownloadUtil {
+    static final String PART_SUFFIX = ".part";
+
+    // 连接中断时的最大尝试次数
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private DownloadUtil() {
+    }
+
+    /**
+     * 下载文件，支持断点续传
+     *
+     * @param url 下载地址
+     * @param file 目标文件
+     * @param size 文件大小，未知时为-1，gzip编码的响应以此计算进度
+     * @param algorithm 清单的哈希算法
+     * @param expectedHash 清单中的哈希值，为空时不校验
+     * @param progress 进度
+     * @return 文件的哈希值
+     * @throws ChecksumMismatchException 下载的文件与清单不一致
+     */
+    public static String download(String url, File file, long size, HashAlgorithm algorithm, String expectedHash,
+        StreamProgress progress) {
+        File partFile = FileUtil.newFile(file.getPath() + PART_SUFFIX);
+        File stateFile = FileUtil.newFile(partFile.getPath() + SegmentDownloadUtil.STATE_SUFFIX);
+        if (stateFile.exists()) {
+            // 分段下载的.part文件已预分配且中间有空洞，不能按长度续传
+            FileUtil.del(partFile);
+            FileUtil.del(stateFile);
+        }
+        FileUtil.mkParentDirs(partFile);
+        progress.start();
+        PartHash hash = new PartHash(HashAlgorithm.orDefault(algorithm));
+        for (int attempt = 1; ; attempt++) {
+            try {
+                downloadPart(url, partFile, size, progress, hash);
+                break;
+            } catch (ClosedByInterruptException exception) {
+                throw new IORuntimeException(exception);
+            } catch (IOException | IORuntimeException | HttpException exception) {
+                if (attempt >= MAX_ATTEMPTS || Thread.currentThread().isInterrupted()) {
+                    throw exception instanceof RuntimeException ? (RuntimeException) exception : new IORuntimeException(exception);
+                }
+                log.warn("下载中断，将从{}续传: {} {}", partFile.length(), file.getName(), exception.getMessage());
+            }
+        }
+        String actualHash = hash.hasher.digest();
+        if (expectedHash != null && !expectedHash.equals(actualHash)) {
+            FileUtil.del(partFile);
+            throw new ChecksumMismatchException(file.getName(), expectedHash, actualHash);
+        }
+        FileUtil.move(partFile, file, true);
+        progress.finish();
+        return actualHash;
+    }
+
+    private static void downloadPart(String url, File partFile, long size, StreamProgress progress, PartHash hash)
+        throws IOException {
+        long offset = partFile.isFile() ? partFile.length() : 0;
+        HttpRequest request = HttpTransport.get(url)
+            .header(Header.ACCEPT_ENCODING, offset > 0 ? "identity" : "gzip");
+        if (offset > 0) {
+            request.header("Range", "bytes=" + offset + "-")
+                .header("If-Range", DateUtil.formatHttpDate(new Date(partFile.lastModified())));
+        }
+        try (HttpTransport.Response response = HttpTransport.execute(request)) {
+            int status = response.getStatus();
+            if (status == HttpStatus.HTTP_PARTIAL && offset > 0) {
+                // 服务端返回的范围与本地不一致时重新下载
+                String contentRange = response.header("Content-Range");
+                if (contentRange == null || !contentRange.startsWith("bytes " + offset + "-")) {
+                    FileUtil.del(partFile);
+                    throw new IOException("续传范围不匹配: " + contentRange);
+                }
+            } else if (status == 416) {
+                // .part文件比服务端文件更长，说明文件已变化
+                FileUtil.del(partFile);
+                throw new IOException("续传范围无效");
+            } else if (status == HttpStatus.HTTP_OK) {
+                offset = 0;
+            } else {
+                throw new IOException("下载失败: " + status);
+            }
+            long contentLength = response.contentLength();
+            long total;
+            if (StrUtil.isNotBlank(response.header(Header.CONTENT_ENCODING))) {
+                // 编码后的长度与写入的内容长度不一致，使用文件大小
+                total = size;
+            } else {
+                total = contentLength < 0 ? -1 : offset + contentLength;
+            }
+            long lastModified = parseHttpDate(response.header("Last-Modified"));
+            hash.seek(partFile, offset);
+            try (FileChannel channel = new FileOutputStream(partFile, offset > 0).getChannel()) {
+                InputStream in = response.bodyStream();
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    channel.write(ByteBuffer.wrap(buffer, 0, read));
+                    hash.update(buffer, read);
+                    offset += read;
+                    progress.progress(total, offset);
+                }
+            } finally {
+                // 记录服务端文件的最后修改时间，用于下次续传的If-Range
+                if (lastModified > 0 && partFile.isFile()) {
+                    partFile.setLastModified(lastModified);
+                }
+            }
+            if (total >= 0 && offset < total) {
+                throw new IOException(StrUtil.format("下载不完整: {}/{}", offset, total));
+            }
+        }
+    }
+
+    /**
+     * .part文件内容的哈希值，与已写入的长度保持一致
+     */
+    private static class PartHash {
+        private final HashAlgorithm algorithm;
+
+        private Hasher hasher;
+
+        // 已计算的长度
+        private long length;
+
+        private PartHash(HashAlgorithm algorithm) {
+            this.algorithm = algorithm;
+            this.hasher = algorithm.newHasher();
+        }
+
+        /**
+         * 从offset开始写入前，使哈希值覆盖.part中前offset字节，首次续传时读取已有部分
+         */
+        private void seek(File partFile, long offset) throws IOException {
+            if (offset == length) {
+                return;
+            }
+            hasher = algorithm.newHasher();
+            length = 0;
+            if (offset == 0) {
+                return;
+            }
+            try (InputStream in = new FileInputStream(partFile)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (length < offset) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, offset - length));
+                    if (read < 0) {
+                        throw new IOException("续传文件不完整: " + partFile.getName());
+                    }
+                    update(buffer, read);
+                }
+            }
+        }
+
+        private void update(byte[] buffer, int read) {
+            hasher.update(buffer, 0, read);
+            length += read;
+        }
+    }
+
+    private static long parseHttpDate(String value) {
+        if (StrUtil.isBlank(value)) {
+            return 0;
+        }
+        try {
+            return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException exception) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client.utils;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.exception.ChecksumMismatchException;
+import com.cxxwl96.updater.client.transport.HttpTransport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.io.StreamProgress;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.http.Header;
+import cn.hutool.http.HttpException;
+import cn.hutool.http.HttpStatus;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 大文件分段并行下载
+ * - 先用HEAD请求确认服务端支持Range，取得ETag或Last-Modified作为If-Range条件，不支持时回退到单连接下载
+ * - .part文件按文件大小预分配，各分段通过独立连接请求各自的范围，按位置写入
+ * - 每个分段边下载边计算crc32，完成后按顺序合并为整个文件的crc32与清单比对，无需重新读取文件。
+ *   其他哈希算法无法按分段合并，使用单连接下载
+ * - 未完成时各分段的下载位置记录在{file}.part.seg，下次从记录的位置续传，服务端文件变化时重新下载
+ *
+ * @author cxxwl96
+ * @since 2024/05/11 20:12
+ */
+@Slf4j
+public class SegmentDownloadUtil {
+    static final String STATE_SUFFIX = ".seg";
+
+    // 单个分段的最小大小。单位：Byte
+    private static final long MIN_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    // 单个分段连接中断时的最大尝试次数
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 记录分段位置的间隔。单位：毫秒
+    private static final long SAVE_INTERVAL = 1000;
+
+    private SegmentDownloadUtil() {
+    }
+
+    /**
+     * 分段并行下载文件
+     *
+     * @param url 下载地址
+     * @param file 目标文件
+     * @param size 文件大小
+     * @param algorithm 清单的哈希算法
+     * @param expectedHash 清单中的哈希值，为空时不校验
+     * @param segments 分段数，即同时使用的连接数
+     * @param progress 进度
+     * @return 文件的哈希值
+     * @throws ChecksumMismatchException 下载的文件与清单不一致
+     */
+    public static String download(String url, File file, long size, HashAlgorithm algorithm, String expectedHash, int segments,
+        StreamProgress progress) {
+        int count = (int) Math.min(segments, size / MIN_SEGMENT_SIZE);
+        String validator = count > 1 && HashAlgorithm.orDefault(algorithm) == HashAlgorithm.CRC32 ? probe(url, size) : null;
+        if (validator == null) {
+            return DownloadUtil.download(url, file, size, algorithm, expectedHash, progress);
+        }
+        File partFile = FileUtil.newFile(file.getPath() + DownloadUtil.PART_SUFFIX);
+        File stateFile = FileUtil.newFile(partFile.getPath() + STATE_SUFFIX);
+        FileUtil.mkParentDirs(partFile);
+        List<Segment> list = loadState(stateFile, partFile, validator, size);
+        if (list == null) {
+            FileUtil.del(partFile);
+            list = split(size, count);
+        } else {
+            log.info("分段续传: {} {}/{}", file.getName(), list.stream().mapToLong(Segment::downloaded).sum(), size);
+        }
+        log.info("分段下载文件: {} {}个分段", file.getName(), list.size());
+        progress.start();
+
+        AtomicLong downloaded = new AtomicLong(list.stream().mapToLong(Segment::downloaded).sum());
+        ExecutorService executor = Executors.newFixedThreadPool(list.size(), ThreadUtil.newNamedThreadFactory("segment-", true));
+        try (RandomAccessFile raf = new RandomAccessFile(partFile, "rw")) {
+            // 预分配文件，各分段按位置写入
+            raf.setLength(size);
+            FileChannel channel = raf.getChannel();
+            List<Future<?>> futures = new ArrayList<>();
+            for (Segment segment : list) {
+                // 续传的分段先补算已下载部分的crc32
+                updateCrc(channel, segment);
+                if (!segment.isDone()) {
+                    futures.add(executor.submit(() -> {
+                        downloadSegment(url, validator, channel, segment, size, downloaded, progress);
+                        return null;
+                    }));
+                }
+            }
+            executor.shutdown();
+            for (Future<?> future : futures) {
+                // 定时记录分段位置，进程异常退出后也能续传
+                while (true) {
+                    try {
+                        future.get(SAVE_INTERVAL, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException exception) {
+                        saveState(stateFile, validator, size, list);
+                    }
+                }
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IORuntimeException(new ClosedByInterruptException());
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IORuntimeException(cause);
+        } catch (IOException exception) {
+            throw new IORuntimeException(exception);
+        } finally {
+            executor.shutdownNow();
+            if (list.stream().allMatch(Segment::isDone)) {
+                FileUtil.del(stateFile);
+            } else {
+                saveState(stateFile, validator, size, list);
+            }
+        }
+
+        // 按分段顺序合并crc32
+        long actual = list.get(0).crc.getValue();
+        for (int i = 1; i < list.size(); i++) {
+            Segment segment = list.get(i);
+            actual = crc32Combine(actual, segment.crc.getValue(), segment.end - segment.start);
+        }
+        String actualHash = String.valueOf(actual);
+        if (expectedHash != null && !expectedHash.equals(actualHash)) {
+            FileUtil.del(partFile);
+            throw new ChecksumMismatchException(file.getName(), expectedHash, actualHash);
+        }
+        FileUtil.move(partFile, file, true);
+        progress.finish();
+        return actualHash;
+    }
+
+    /**
+     * 确认服务端支持Range请求
+     *
+     * @return If-Range条件，不支持分段下载时为null
+     */
+    private static String probe(String url, long size) {
+        try (HttpTransport.Response response = HttpTransport.execute(HttpTransport.head(url)
+            .header(Header.ACCEPT_ENCODING, "identity"))) {
+            if (response.getStatus() != HttpStatus.HTTP_OK || !StrUtil.contains(response.header("Accept-Ranges"), "bytes")
+                || StrUtil.isNotBlank(response.header(Header.CONTENT_ENCODING)) || response.contentLength() != size) {
+                log.info("服务端不支持分段下载: {} {}", url, response.getStatus());
+                return null;
+            }
+            // 弱ETag不能用于If-Range
+            String etag = response.header("ETag");
+            if (StrUtil.isNotBlank(etag) && !etag.startsWith("W/")) {
+                return etag;
+            }
+            return StrUtil.emptyToNull(response.header("Last-Modified"));
+        } catch (IORuntimeException | HttpException exception) {
+            if (exception.getCause() instanceof ClosedByInterruptException) {
+                throw exception;
+            }
+            log.warn("分段下载探测失败: {} {}", url, exception.getMessage());
+            return null;
+        }
+    }
+
+    private static void downloadSegment(String url, String validator, FileChannel channel, Segment segment, long size,
+        AtomicLong downloaded, StreamProgress progress) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                downloadRange(url, validator, channel, segment, size, downloaded, progress);
+                return;
+            } catch (ClosedByInterruptException exception) {
+                throw new IORuntimeException(exception);
+            } catch (IOException | IORuntimeException | HttpException exception) {
+                if (attempt >= MAX_ATTEMPTS || Thread.currentThread().isInterrupted()) {
+                    throw exception;
+                }
+                log.warn("分段下载中断，将从{}续传: {}", segment.position, exception.getMessage());
+            }
+        }
+    }
+
+    private static void downloadRange(String url, String validator, FileChannel channel, Segment segment, long size,
+        AtomicLong downloaded, StreamProgress progress) throws IOException {
+        String range = "bytes " + segment.position + "-" + (segment.end - 1) + "/";
+        try (HttpTransport.Response response = HttpTransport.execute(HttpTransport.get(url)
+            .header(Header.ACCEPT_ENCODING, "identity")
+            .header("Range", "bytes=" + segment.position + "-" + (segment.end - 1))
+            .header("If-Range", validator))) {
+            // If-Range不匹配时服务端返回200，说明文件已变化
+            if (response.getStatus() != HttpStatus.HTTP_PARTIAL) {
+                throw new IOException("分段下载失败: " + response.getStatus());
+            }
+            String contentRange = response.header("Content-Range");
+            if (contentRange == null || !contentRange.startsWith(range)) {
+                throw new IOException("分段范围不匹配: " + contentRange);
+            }
+            InputStream in = response.bodyStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while (segment.position < segment.end && (read = in.read(buffer, 0, (int) Math.min(buffer.length, segment.end - segment.position))) != -1) {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                long position = segment.position;
+                while (byteBuffer.hasRemaining()) {
+                    position += channel.write(byteBuffer, position);
+                }
+                segment.crc.update(buffer, 0, read);
+                segment.position = position;
+                synchronized (progress) {
+                    progress.progress(size, downloaded.addAndGet(read));
+                }
+            }
+            if (!segment.isDone()) {
+                throw new IOException(StrUtil.format("分段下载不完整: {}/{}", segment.position, segment.end));
+            }
+        }
+    }
+
+    private static List<Segment> split(long size, int count) {
+        List<Segment> list = new ArrayList<>();
+        long segmentSize = (size + count - 1) / count;
+        for (long start = 0; start < size; start += segmentSize) {
+            list.add(new Segment(start, Math.min(start + segmentSize, size), start));
+        }
+        return list;
+    }
+
+    private static void updateCrc(FileChannel channel, Segment segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = segment.start;
+        while (position < segment.position) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), segment.position - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("分段文件不完整");
+            }
+            segment.crc.update(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    /**
+     * 读取分段记录，记录与服务端文件不一致时返回null
+     * - 格式: 第一行为If-Range条件，第二行为文件大小，之后每行为一个分段: start end position
+     */
+    private static List<Segment> loadState(File stateFile, File partFile, String validator, long size) {
+        if (!stateFile.isFile() || !partFile.isFile() || partFile.length() != size) {
+            return null;
+        }
+        try {
+            List<String> lines = FileUtil.readUtf8Lines(stateFile);
+            if (lines.size() < 3 || !validator.equals(lines.get(0)) || Long.parseLong(lines.get(1)) != size) {
+                return null;
+            }
+            List<Segment> list = new ArrayList<>();
+            for (String line : lines.subList(2, lines.size())) {
+                String[] values = line.split(" ");
+                Segment segment = new Segment(Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2]));
+                if (segment.position < segment.start || segment.position > segment.end) {
+                    return null;
+                }
+                list.add(segment);
+            }
+            return list;
+        } catch (Exception exception) {
+            log.warn("分段记录无效: {} {}", stateFile.getName(), exception.getMessage());
+            return null;
+        }
+    }
+
+    private static void saveState(File stateFile, String validator, long size, List<Segment> list) {
+        List<String> lines = new ArrayList<>();
+        lines.add(validator);
+        lines.add(String.valueOf(size));
+        for (Segment segment : list) {
+            lines.add(segment.start + " " + segment.end + " " + segment.position);
+        }
+        try {
+            FileUtil.writeUtf8Lines(lines, stateFile);
+        } catch (Exception exception) {
+            log.warn("保存分段记录失败: {} {}", stateFile.getName(), exception.getMessage());
+        }
+    }
+
+    /**
+     * 合并两段数据的crc32，参考zlib的crc32_combine
+     *
+     * @param crc1 前一段的crc32
+     * @param crc2 后一段的crc32
+     * @param len2 后一段的长度
+     * @return 两段拼接后的crc32
+     */
+    static long crc32Combine(long crc1, long crc2, long len2) {
+        if (len2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        // 一个0比特的运算矩阵
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // 两个、四个0比特的运算矩阵
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+        // 按len2的二进制位依次追加0字节
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            len2 >>= 1;
+            if (len2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((len2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            len2 >>= 1;
+        } while (len2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] mat, long vec) {
+        long sum = 0;
+        for (int i = 0; vec != 0; i++, vec >>= 1) {
+            if ((vec & 1) != 0) {
+                sum ^= mat[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] mat) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = gf2MatrixTimes(mat, mat[n]);
+        }
+    }
+
+    private static class Segment {
+        private final long start;
+
+        // 不包含
+        private final long end;
+
+        // 下一个要下载的位置，多个线程读取
+        private volatile long position;
+
+        private final CRC32 crc = new CRC32();
+
+        private Segment(long start, long end, long position) {
+            this.start = start;
+            this.end = end;
+            this.position = position;
+        }
+
+        private boolean isDone() {
+            return position >= end;
+        }
+
+        private long downloaded() {
+            return position - start;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.client.views.component;
+
+import com.cxxwl96.updater.api.utils.PrettyUtil;
+import com.cxxwl96.updater.client.model.ProgressItem;
+import com.cxxwl96.updater.client.views.controller.ProgressItemController;
+import com.cxxwl96.updater.client.views.utils.FXMLUtil;
+
+import cn.hutool.core.util.StrUtil;
+import javafx.scene.Parent;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.layout.VBox;
+
+/**
+ * 文件进度列表的单元格
+ * - ListView只为可见的行创建单元格，滚动时复用，节点数量与文件数量无关
+ * - 进度变化不通知单元格，由界面按固定帧率调用render刷新
+ *
+ * @author cxxwl96
+ * @since 2024/05/15 21:10
+ */
+public class ProgressItemCell extends ListCell<ProgressItem> {
+    private final ProgressItemController controller = new ProgressItemController();
+
+    private final Parent node;
+
+    public ProgressItemCell(ListView<ProgressItem> listView) {
+        node = FXMLUtil.load(controller);
+        ((VBox) node).prefWidthProperty().bind(listView.widthProperty().subtract(40));
+        controller.init();
+    }
+
+    @Override
+    protected void updateItem(ProgressItem item, boolean empty) {
+        super.updateItem(item, empty);
+        if (empty || item == null) {
+            setGraphic(null);
+            return;
+        }
+        controller.setPath(item.getPath());
+        render();
+        setGraphic(node);
+    }
+
+    /**
+     * 按当前进度刷新显示
+     */
+    public void render() {
+        ProgressItem item = getItem();
+        if (item == null || isEmpty()) {
+            return;
+        }
+        controller.setProgress(item.getProgress());
+        if (item.getDetail() != null) {
+            controller.setProgressText(item.getDetail());
+        } else if (item.getTotal() >= 0) {
+            controller.setProgressText(
+                PrettyUtil.prettySize(item.getTransferred(), 1) + "/" + PrettyUtil.prettySize(item.getTotal(), 1));
+        } else {
+            controller.setProgressText(StrUtil.EMPTY);
+        }
+    }
+}
@@ -49,10 +49,17 @@ public class ProgressItemController implements IController {
     }
 
     public void setProgress(double progress) {
+        // 单元格复用时进度可能变小，恢复为进行中的颜色
+        if (progress < 1) {
+            this.progress.setType(Progress.Type.PRIMARY);
+        }
         this.progress.setProgress(progress);
     }
 
     public void setPath(String path) {
+        if (path.equals(pathLabel.getText())) {
+            return;
+        }
         pathLabel.setText(path);
         pathLabel.setTooltip(new Tooltip(path));
     }
@@ -16,28 +16,31 @@
 
 package com.cxxwl96.updater.client.views.controller;
 
-import com.cxxwl96.updater.api.enums.FileOption;
 import com.cxxwl96.updater.api.model.FileModel;
 import com.cxxwl96.updater.api.utils.PrettyUtil;
-import com.cxxwl96.updater.client.UpdaterClient;
+import com.cxxwl96.updater.client.UpdaterConfig;
 import com.cxxwl96.updater.client.model.CheckUpdateResult;
+import com.cxxwl96.updater.client.model.ProgressItem;
+import com.cxxwl96.updater.client.service.UpdateEngine;
+import com.cxxwl96.updater.client.service.UpdateListener;
 import com.cxxwl96.updater.client.views.annotations.ViewController;
 import com.cxxwl96.updater.client.views.common.IController;
 import com.cxxwl96.updater.client.views.component.Progress;
-import com.cxxwl96.updater.client.views.utils.FXMLUtil;
+import com.cxxwl96.updater.client.views.component.ProgressItemCell;
 
-import java.io.File;
-import java.net.URLEncoder;
 import java.nio.channels.ClosedByInterruptException;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
-import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.io.IORuntimeException;
-import cn.hutool.core.io.StreamProgress;
-import cn.hutool.http.HttpUtil;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.Parent;
@@ -47,19 +50,23 @@ import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListView;
 import javafx.scene.image.ImageView;
-import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * UpdatingController
+ * - 文件列表使用ListView的单元格复用，只为可见的行创建节点
+ * - 更新线程的回调只修改进度模型，界面按固定帧率合并刷新，不为每次回调提交Platform.runLater
  *
  * @author cxxwl96
  * @since 2024/04/10 21:42
  */
 @Slf4j
 @ViewController(value = "/views/Update.fxml", title = "更新程序", iconPath = "/assets/imgs/logo.png")
-public class UpdateController implements IController {
+public class UpdateController implements IController, UpdateListener {
+    // 界面刷新间隔，即每秒20帧
+    private static final Duration FRAME_INTERVAL = Duration.millis(50);
 
     @FXML
     private Label titleLabel;
@@ -74,29 +81,47 @@ public class UpdateController implements IController {
     private Progress totalProgress;
 
     @FXML
-    private ListView<Parent> listBox;
+    private ListView<ProgressItem> listBox;
 
     private Parent parent;
 
     private final CheckUpdateResult result;
 
+    private final UpdateEngine engine;
+
+    // 文件路径 -> 进度
+    private final Map<String, ProgressItem> progressItems = new ConcurrentHashMap<>();
+
+    // 已开始、尚未加入列表的文件，下一帧批量加入
+    private final Queue<ProgressItem> startedItems = new ConcurrentLinkedQueue<>();
+
+    // 列表已创建的单元格，只在JavaFX线程访问
+    private final List<ProgressItemCell> cells = new ArrayList<>();
+
+    private final Timeline frameTimer = new Timeline(new KeyFrame(FRAME_INTERVAL, event -> refresh()));
+
+    // 总进度，按已传输的字节数计算，完成后由update设置为1
+    private volatile double progress;
+
     public UpdateController(CheckUpdateResult result) {
         this.result = result;
+        this.engine = new UpdateEngine(result, UpdaterConfig.parallelism, this);
     }
 
     @Override
     public void initialize(Parent parent) {
         this.parent = parent;
-        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Thread thread = new Thread(this::update, "updater");
         parent.getScene().getWindow().setOnCloseRequest(event -> {
-            if (!executor.isTerminated()) {
+            if (thread.isAlive()) {
                 Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "应用未更新完成，退出更新可能导致软件启动失败，是否退出更新？",
                     ButtonType.CANCEL, ButtonType.OK);
                 alert.initOwner(parent.getScene().getWindow());
                 Optional<ButtonType> optional = alert.showAndWait();
                 optional.ifPresent(buttonType -> {
                     if (buttonType == ButtonType.OK) {
-                        executor.shutdownNow();
+                        engine.cancel();
+                        thread.interrupt();
                     } else {
                         event.consume();
                     }
@@ -107,6 +132,14 @@ public class UpdateController implements IController {
         String detail = String.format("%d个文件，总%s", result.getModifyFileModels().size(), PrettyUtil.prettySize(result.getTotalSize()));
         detailLabel.setText(detail);
 
+        listBox.setCellFactory(listView -> {
+            ProgressItemCell cell = new ProgressItemCell(listView);
+            cells.add(cell);
+            return cell;
+        });
+        frameTimer.setCycleCount(Animation.INDEFINITE);
+        frameTimer.play();
+
         totalProgress.setOnComplete(() -> {
             totalProgress.setType(Progress.Type.SUCCESS);
             Alert alert = new Alert(Alert.AlertType.INFORMATION, "应用更新成功，请重启应用");
@@ -114,85 +147,32 @@ public class UpdateController implements IController {
         });
 
         // 更新
-        executor.submit(this::update);
-        executor.shutdown();
+        thread.setDaemon(true);
+        thread.start();
     }
 
     private void update() {
         try {
-            String baseUrl = String.format("%s/update/%s/%s", UpdaterClient.host, result.getAppName(), result.getNewVersion());
-            for (int i = 0; i < result.getModifyFileModels().size(); i++) {
-                FileModel fileModel = result.getModifyFileModels().get(i);
-                File file = FileUtil.newFile(UpdaterClient.appPath + fileModel.getPath());
-                // 如果是变更文件则先删除原文件
-                if (fileModel.getOption() == FileOption.DELETE) {
-                    try {
-                        if (file.exists()) {
-                            FileUtil.del(file);
-                        }
-                    } catch (Exception ignored) {
-                    }
-                    continue;
-                }
-                ProgressItemController progressItemController = new ProgressItemController();
-                Parent progressItemNode = FXMLUtil.load(progressItemController);
-                ((VBox) progressItemNode).prefWidthProperty().bind(listBox.widthProperty().subtract(40));
-                progressItemController.init();
-
-                int finalI = i;
-                Platform.runLater(() -> {
-                    listBox.getItems().add(progressItemNode);
-                    listBox.scrollTo(finalI); // 滚动条置底
-                });
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException ignore) {
-                }
-
-                String url = baseUrl + "?pathRelativeToContent=" + URLEncoder.encode(fileModel.getPath(), StandardCharsets.UTF_8.name());
-
-                log.info("更新文件: {} {}", fileModel.getPath(), PrettyUtil.prettySize(fileModel.getSize()));
-                HttpUtil.downloadFile(url, file, 3000, new StreamProgress() {
-                    @Override
-                    public void start() {
-                        Platform.runLater(() -> {
-                            progressItemController.setPath(fileModel.getPath());
-                        });
-                    }
-
-                    @Override
-                    public void progress(long total, long progressSize) {
-                        Platform.runLater(() -> {
-                            progressItemController.setProgress(progressSize * 1.0 / total);
-                            progressItemController.setProgressText(
-                                PrettyUtil.prettySize(progressSize, 1) + "/" + PrettyUtil.prettySize(total, 1));
-                        });
-                    }
-
-                    @Override
-                    public void finish() {
-                        log.info("更新文件成功: {}", fileModel.getPath());
-                        Platform.runLater(() -> {
-                            if (finalI == result.getModifyFileModels().size() - 1) {
-                                titleLabel.setText("更新成功");
-                                successImg.setManaged(true);
-                                successImg.setVisible(true);
-                                totalProgress.setProgress(1);
-                            } else {
-                                totalProgress.setProgress(finalI * 1.0 / result.getModifyFileModels().size());
-                            }
-                        });
-                    }
-                });
-            }
+            engine.run();
+            Platform.runLater(() -> {
+                stopRefresh();
+                titleLabel.setText("更新成功");
+                successImg.setManaged(true);
+                successImg.setVisible(true);
+                totalProgress.setProgress(1);
+            });
         } catch (Exception exception) {
             if (exception instanceof IORuntimeException && exception.getCause() instanceof ClosedByInterruptException) {
                 log.warn("Updater application closed by InterruptException");
-                closeThisStage();
+                Platform.runLater(() -> {
+                    stopRefresh();
+                    closeThisStage();
+                });
                 return;
             }
             log.error(exception.getMessage(), exception);
             Platform.runLater(() -> {
+                stopRefresh();
                 Alert alert = new Alert(Alert.AlertType.ERROR, exception.getMessage());
                 alert.setOnCloseRequest(event -> closeThisStage());
                 alert.show();
@@ -200,6 +180,82 @@ public class UpdateController implements IController {
         }
     }
 
+    @Override
+    public void onFileStart(FileModel fileModel) {
+        progressItems.computeIfAbsent(fileModel.getPath(), path -> {
+            ProgressItem item = new ProgressItem(path);
+            startedItems.add(item);
+            return item;
+        });
+    }
+
+    @Override
+    public void onFileProgress(FileModel fileModel, long total, long progressSize) {
+        ProgressItem item = progressItems.get(fileModel.getPath());
+        if (item == null) {
+            return;
+        }
+        item.setTransferred(progressSize);
+        item.setTotal(total);
+        // 重新下载时不再显示校验失败
+        item.setDetail(null);
+    }
+
+    @Override
+    public void onFileFinish(FileModel fileModel, String detail) {
+        ProgressItem item = progressItems.get(fileModel.getPath());
+        if (item == null) {
+            return;
+        }
+        if (detail != null) {
+            item.setDetail(detail);
+        }
+        item.setFinished(true);
+    }
+
+    @Override
+    public void onFileVerifyFailed(FileModel fileModel, int attempt) {
+        ProgressItem item = progressItems.get(fileModel.getPath());
+        if (item == null) {
+            return;
+        }
+        item.setDetail("校验失败，重新下载");
+    }
+
+    @Override
+    public void onProgress(int finishedFiles, int totalFiles, long transferredBytes, long totalBytes) {
+        // 进度达到1时会触发完成提示，所有文件完成前最多显示到0.99
+        if (finishedFiles < totalFiles) {
+            double value = totalBytes > 0 ? transferredBytes * 1.0 / totalBytes : finishedFiles * 1.0 / totalFiles;
+            this.progress = Math.min(value, 0.99);
+        }
+    }
+
+    /**
+     * 每帧在JavaFX线程执行一次: 加入新开始的文件，刷新可见行和总进度
+     */
+    private void refresh() {
+        List<ProgressItem> items = new ArrayList<>();
+        for (ProgressItem item = startedItems.poll(); item != null; item = startedItems.poll()) {
+            items.add(item);
+        }
+        if (!items.isEmpty()) {
+            listBox.getItems().addAll(items);
+            listBox.scrollTo(listBox.getItems().size() - 1); // 滚动条置底
+        }
+        for (ProgressItemCell cell : cells) {
+            cell.render();
+        }
+        if (totalProgress.getProgress() < 1) {
+            totalProgress.setProgress(progress);
+        }
+    }
+
+    private void stopRefresh() {
+        frameTimer.stop();
+        refresh();
+    }
+
     private void closeThisStage() {
         Optional.ofNullable(this.parent).map(Parent::getScene).map(Scene::getWindow).ifPresent(window -> ((Stage) window).close());
     }
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.cache;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.model.ChecklistIndex;
+import com.cxxwl96.updater.api.model.Constant;
+import com.cxxwl96.updater.api.model.FileModel;
+import com.cxxwl96.updater.api.model.UpdateModel;
+import com.cxxwl96.updater.api.utils.ChecklistIndexUtil;
+import com.cxxwl96.updater.api.utils.ChecksumUtil;
+import com.cxxwl96.updater.server.config.AppConfig;
+import com.cxxwl96.updater.server.model.Manifest;
+import com.cxxwl96.updater.server.model.ManifestEntry;
+import com.cxxwl96.updater.server.utils.AppRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.io.FileUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 已解析清单缓存
+ * - 按应用名+版本缓存，首次访问时加载，超出容量按LRU淘汰
+ * - 上传发布新版本或修改LATEST时失效
+ * - 只缓存版本清单自身算法的哈希值，不按客户端的算法重新计算，避免请求线程被任意算法触发全量计算
+ *
+ * @author cxxwl96
+ * @since 2024/04/21 10:05
+ */
+@Slf4j
+@Component
+public class ManifestCache {
+    @Autowired
+    private AppConfig appConfig;
+
+    @Autowired
+    private AppRepository appRepository;
+
+    // 应用名 -> 最新版本号
+    private final Map<String, String> latestVersions = new ConcurrentHashMap<>();
+
+    private LRUCache<String, Manifest> manifests;
+
+    @PostConstruct
+    public void init() {
+        manifests = CacheUtil.newLRUCache(appConfig.getManifestCacheSize());
+    }
+
+    /**
+     * 获取应用最新版本号
+     *
+     * @param appName 应用名
+     * @return 应用最新版本号
+     */
+    public String getLatestVersion(String appName) {
+        return latestVersions.computeIfAbsent(appName, key -> appRepository.getLatestVersion(key, true, true));
+    }
+
+    /**
+     * 获取应用版本清单
+     *
+     * @param appName 应用名
+     * @param version 应用版本
+     * @return 应用版本清单
+     */
+    public Manifest getManifest(String appName, String version) {
+        // 同一个key并发加载时只会加载一次
+        return manifests.get(key(appName, version), () -> load(appName, version));
+    }
+
+    /**
+     * 应用版本发布或LATEST变更后使缓存失效
+     *
+     * @param appName 应用名
+     * @param version 应用版本
+     */
+    public void invalidate(String appName, String version) {
+        log.info("Invalidate manifest cache '{}' '{}'", appName, version);
+        latestVersions.remove(appName);
+        manifests.remove(key(appName, version));
+    }
+
+    private Manifest load(String appName, String version) {
+        log.info("Load manifest '{}' '{}'", appName, version);
+        List<ManifestEntry> entries = new ArrayList<>();
+        // 优先读取二进制索引，旧版本没有索引则解析文本CHECKLIST
+        File checksumIndexFile = appRepository.getChecksumIndexFile(appName, version, false);
+        File checksumFile = appRepository.getChecksumFile(appName, version, true);
+        HashAlgorithm algorithm;
+        if (checksumIndexFile.isFile()) {
+            ChecklistIndex index = ChecklistIndexUtil.open(checksumIndexFile);
+            algorithm = index.getAlgorithm();
+            for (int i = 0; i < index.size(); i++) {
+                String path = index.getPath(i);
+                entries.add(new ManifestEntry(path, FileUtil.getName(path), index.getHash(i), algorithm, index.getSize(i)));
+            }
+        } else {
+            UpdateModel updateModel = ChecksumUtil.parseChecksum(FileUtil.readUtf8String(checksumFile));
+            algorithm = updateModel.getAlgorithm();
+            for (FileModel fileModel : updateModel.getFiles()) {
+                File file = appRepository.getSingleInContentFile(appName, version, fileModel.getPath(), false);
+                entries.add(new ManifestEntry(fileModel.getPath(), fileModel.getName(), fileModel.getHash(), algorithm, file.length()));
+            }
+        }
+        return new Manifest(appName, version, algorithm, entries, checklistEntry(checksumFile, algorithm));
+    }
+
+    private ManifestEntry checklistEntry(File checksumFile, HashAlgorithm algorithm) {
+        return new ManifestEntry(Constant.CHECKLIST, Constant.CHECKLIST, ChecksumUtil.hash(checksumFile, algorithm), algorithm,
+            checksumFile.length());
+    }
+
+    private String key(String appName, String version) {
+        return appName + "/" + version;
+    }
+}
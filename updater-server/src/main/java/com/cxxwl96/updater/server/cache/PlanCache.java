@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.cache;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.model.FileModel;
+import com.cxxwl96.updater.api.utils.ChecksumUtil;
+import com.cxxwl96.updater.server.config.AppConfig;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.annotation.PostConstruct;
+
+import cn.hutool.cache.CacheUtil;
+import cn.hutool.cache.impl.CacheObj;
+import cn.hutool.cache.impl.LRUCache;
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.lang.func.Func0;
+import cn.hutool.core.util.HexUtil;
+import cn.hutool.crypto.SecureUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 更新计划缓存
+ * - 按应用名+最新版本+客户端清单哈希算法+客户端清单指纹缓存比对结果
+ * - 同一个key的并发请求只计算一次
+ *
+ * @author cxxwl96
+ * @since 2024/04/21 16:40
+ */
+@Slf4j
+@Component
+public class PlanCache {
+    private static final byte[] SEPARATOR = ":".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] LINE_BREAK = "\n".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private AppConfig appConfig;
+
+    private LRUCache<String, List<FileModel>> plans;
+
+    @PostConstruct
+    public void init() {
+        plans = CacheUtil.newLRUCache(appConfig.getPlanCacheSize());
+    }
+
+    /**
+     * 获取更新计划，不存在则计算
+     * - 返回的列表及其中的FileModel为共享对象，只读
+     *
+     * @param appName 应用名
+     * @param latestVersion 应用最新版本
+     * @param algorithm 客户端清单哈希算法
+     * @param fileModels 客户端文件列表
+     * @param supplier 计算更新计划
+     * @return 更新计划
+     */
+    public List<FileModel> getPlan(String appName, String latestVersion, HashAlgorithm algorithm, List<FileModel> fileModels,
+        Func0<List<FileModel>> supplier) {
+        String key = appName + "/" + latestVersion + "/" + algorithm + "/" + fingerprint(fileModels);
+        return plans.get(key, () -> Collections.unmodifiableList(supplier.call()));
+    }
+
+    /**
+     * 使应用所有更新计划失效
+     *
+     * @param appName 应用名
+     */
+    public void invalidate(String appName) {
+        log.info("Invalidate plan cache '{}'", appName);
+        String prefix = appName + "/";
+        // keySet是按访问排序的LinkedHashMap的视图，遍历时不加锁，并发的get会使其抛出ConcurrentModificationException
+        // cacheObjIterator在缓存锁内复制后再遍历
+        Iterator<CacheObj<String, List<FileModel>>> iterator = plans.cacheObjIterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next().getKey();
+            if (key.startsWith(prefix)) {
+                plans.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 计算客户端清单指纹: 按路径排序后的 path:hash 列表的SHA-256
+     *
+     * @param fileModels 客户端文件列表
+     * @return 指纹
+     */
+    private String fingerprint(List<FileModel> fileModels) {
+        MessageDigest digest = SecureUtil.sha256().getDigest();
+        if (CollUtil.isNotEmpty(fileModels)) {
+            // 客户端上传的清单本身有序，排序开销很小
+            List<FileModel> sorted = new ArrayList<>(fileModels);
+            sorted.sort(Comparator.comparing(fileModel -> fileModel.getPath().replace("\\", "/")));
+            for (FileModel fileModel : sorted) {
+                digest.update(fileModel.getPath().replace("\\", "/").getBytes(StandardCharsets.UTF_8));
+                digest.update(SEPARATOR);
+                digest.update(String.valueOf(ChecksumUtil.hashOf(fileModel)).getBytes(StandardCharsets.UTF_8));
+                digest.update(LINE_BREAK);
+            }
+        }
+        return HexUtil.encodeHexStr(digest.digest());
+    }
+}
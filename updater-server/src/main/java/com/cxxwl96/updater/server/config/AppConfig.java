@@ -16,9 +16,13 @@
 
 package com.cxxwl96.updater.server.config;
 
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -39,4 +43,66 @@ public class AppConfig {
     private List<String> defaultIgnoreFiles;
 
     private Map<String, List<String>> ignoreFiles;
+
+    // 已解析清单缓存容量（应用版本数）
+    private int manifestCacheSize = 64;
+
+    // 更新计划缓存容量（应用版本+客户端清单）
+    private int planCacheSize = 1024;
+
+    // 是否启用内容寻址存储，相同内容的文件在各版本间只存储一份
+    private boolean blobStore;
+
+    // 上传时是否为压缩率高的文件生成gzip预压缩文件，单文件更新时按Accept-Encoding发送
+    private boolean precompress = true;
+
+    // 下载文件时是否使用Tomcat sendfile零拷贝发送，不支持时回退到缓冲区复制
+    private boolean sendfile = true;
+
+    // 单个keep-alive连接最多处理的请求数，超出后服务端关闭连接，-1为不限制
+    private int maxKeepAliveRequests = 10000;
+
+    // 上传处理线程数
+    private int uploadWorkers = 1;
+
+    // 上传任务排队数量，超出则拒绝上传
+    private int uploadQueueSize = 8;
+
+    // 分发zip中直接存储不压缩的扩展名，如已压缩过的jar、png、mp4等
+    private List<String> storeExtensions = new ArrayList<>();
+
+    // 默认分发zip压缩级别 0-9，-1为默认级别，0为全部直接存储
+    private int compressionLevel = -1;
+
+    // 应用分发zip压缩级别，未配置则使用默认级别
+    private Map<String, Integer> compressionLevels = new HashMap<>();
+
+    // 上传zip的条目名未设置UTF-8标志且不是合法的UTF-8时使用的编码
+    private String uploadCharset = "GBK";
+
+    // 默认清单哈希算法
+    private HashAlgorithm hashAlgorithm = HashAlgorithm.CRC32;
+
+    // 应用清单哈希算法，未配置则使用默认算法
+    private Map<String, HashAlgorithm> hashAlgorithms = new HashMap<>();
+
+    /**
+     * 获取应用的分发zip压缩级别
+     *
+     * @param appName 应用名
+     * @return 压缩级别
+     */
+    public int getCompressionLevel(String appName) {
+        return compressionLevels.getOrDefault(appName, compressionLevel);
+    }
+
+    /**
+     * 获取应用的清单哈希算法
+     *
+     * @param appName 应用名
+     * @return 哈希算法
+     */
+    public HashAlgorithm getHashAlgorithm(String appName) {
+        return hashAlgorithms.getOrDefault(appName, hashAlgorithm);
+    }
 }
@@ -23,6 +23,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
@@ -37,12 +38,13 @@ public class DownloadController {
     private UpdateService updateService;
 
     @GetMapping("/download/{appName}")
-    public void downloadLatest(@PathVariable String appName, HttpServletResponse response) {
-        updateService.downloadLatest(appName, response);
+    public void downloadLatest(@PathVariable String appName, HttpServletRequest request, HttpServletResponse response) {
+        updateService.downloadLatest(appName, request, response);
     }
 
     @GetMapping("/download/{appName}/{version}")
-    public void download(@PathVariable String appName, @PathVariable String version, HttpServletResponse response) {
-        updateService.download(appName, version, response);
+    public void download(@PathVariable String appName, @PathVariable String version, HttpServletRequest request,
+        HttpServletResponse response) {
+        updateService.download(appName, version, request, response);
     }
 }
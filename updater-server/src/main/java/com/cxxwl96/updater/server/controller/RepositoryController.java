@@ -29,6 +29,9 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 /**
  * RepositoryController
  *
@@ -47,7 +50,7 @@ public class RepositoryController {
     }
 
     @GetMapping("/{appName}/latest")
-    public Result<String> latest(@PathVariable String appName) {
-        return repositoryService.latest(appName);
+    public Result<String> latest(@PathVariable String appName, HttpServletRequest request, HttpServletResponse response) {
+        return repositoryService.latest(appName, request, response);
     }
 }
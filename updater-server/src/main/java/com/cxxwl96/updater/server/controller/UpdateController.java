@@ -16,6 +16,8 @@
 
 package com.cxxwl96.updater.server.controller;
 
+import com.cxxwl96.updater.api.model.BatchRequest;
+import com.cxxwl96.updater.api.model.DeltaRequest;
 import com.cxxwl96.updater.api.model.FileModel;
 import com.cxxwl96.updater.api.model.Result;
 import com.cxxwl96.updater.api.model.UpdateModel;
@@ -29,6 +31,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
@@ -52,12 +55,35 @@ public class UpdateController {
 
     @GetMapping("/update/{appName}/{version}")
     public void update(@PathVariable String appName, @PathVariable String version, @RequestParam String pathRelativeToContent,
-        HttpServletResponse response) {
+        HttpServletRequest request, HttpServletResponse response) {
+
+        UpdateModel model = new UpdateModel().setAppName(appName)
+            .setVersion(version)
+            .setFiles(CollUtil.newArrayList(new FileModel().setPath(pathRelativeToContent)));
+
+        updateService.updateSingleFile(model, request, response);
+    }
+
+    @GetMapping("/update/{appName}/{version}/patch")
+    public void patch(@PathVariable String appName, @PathVariable String version, @RequestParam String pathRelativeToContent,
+        @RequestParam String baseHash, HttpServletRequest request, HttpServletResponse response) {
 
         UpdateModel model = new UpdateModel().setAppName(appName)
             .setVersion(version)
             .setFiles(CollUtil.newArrayList(new FileModel().setPath(pathRelativeToContent)));
 
-        updateService.updateSingleFile(model, response);
+        updateService.updatePatch(model, baseHash, request, response);
+    }
+
+    @PostMapping("/update/{appName}/{version}/batch")
+    public void batch(@PathVariable String appName, @PathVariable String version, @RequestBody @Valid BatchRequest request,
+        HttpServletResponse response) {
+        updateService.updateBatch(appName, version, request, response);
+    }
+
+    @PostMapping("/update/{appName}/{version}/delta")
+    public void delta(@PathVariable String appName, @PathVariable String version, @RequestBody @Valid DeltaRequest request,
+        HttpServletResponse response) {
+        updateService.updateDelta(appName, version, request, response);
     }
 }
@@ -18,9 +18,12 @@ package com.cxxwl96.updater.server.controller;
 
 import com.cxxwl96.updater.api.model.Result;
 import com.cxxwl96.updater.api.model.UploadRequest;
-import com.cxxwl96.updater.server.service.UpdateService;
+import com.cxxwl96.updater.server.model.UploadJob;
+import com.cxxwl96.updater.server.service.UploadJobService;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
@@ -36,10 +39,15 @@ import javax.validation.Valid;
 @RestController
 public class UploadController {
     @Autowired
-    private UpdateService updateService;
+    private UploadJobService uploadJobService;
 
     @PostMapping("/upload")
-    public Result<?> upload(@Valid UploadRequest request, MultipartFile file) {
-        return updateService.upload(request, file);
+    public Result<UploadJob> upload(@Valid UploadRequest request, MultipartFile file) {
+        return Result.success("上传成功，正在处理", uploadJobService.submit(request, file));
+    }
+
+    @GetMapping("/upload/jobs/{id}")
+    public Result<UploadJob> job(@PathVariable String id) {
+        return Result.success(uploadJobService.getJob(id));
     }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.model;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * 已解析的应用版本清单（不可变）
+ *
+ * @author cxxwl96
+ * @since 2024/04/21 10:05
+ */
+@Getter
+public class Manifest {
+    private final String appName;
+
+    private final String version;
+
+    // 哈希算法
+    private final HashAlgorithm algorithm;
+
+    // 路径 -> 清单条目
+    private final Map<String, ManifestEntry> entries;
+
+    // CHECKLIST文件自身
+    private final ManifestEntry checklist;
+
+    public Manifest(String appName, String version, HashAlgorithm algorithm, List<ManifestEntry> entries, ManifestEntry checklist) {
+        this.appName = appName;
+        this.version = version;
+        this.algorithm = algorithm;
+        Map<String, ManifestEntry> map = new LinkedHashMap<>();
+        for (ManifestEntry entry : entries) {
+            map.put(entry.getPath(), entry);
+        }
+        this.entries = Collections.unmodifiableMap(map);
+        this.checklist = checklist;
+    }
+}
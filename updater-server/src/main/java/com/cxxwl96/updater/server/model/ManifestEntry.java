@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.model;
+
+import com.cxxwl96.updater.api.enums.FileOption;
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.model.FileModel;
+
+import lombok.Value;
+
+/**
+ * 清单条目（不可变）
+ *
+ * @author cxxwl96
+ * @since 2024/04/21 10:05
+ */
+@Value
+public class ManifestEntry {
+    // 文件相对Content的路径
+    String path;
+
+    // 文件名
+    String name;
+
+    // 文件哈希值
+    String hash;
+
+    // 哈希算法
+    HashAlgorithm algorithm;
+
+    // 文件大小
+    long size;
+
+    /**
+     * 生成新的FileModel，不共享缓存中的对象
+     *
+     * @param option 文件操作
+     * @return FileModel
+     */
+    public FileModel toFileModel(FileOption option) {
+        return new FileModel().setOption(option)
+            .setPath(path)
+            .setName(name)
+            .setCrc32(algorithm == HashAlgorithm.CRC32 ? Long.valueOf(hash) : null)
+            .setHash(hash)
+            .setSize(size);
+    }
+}
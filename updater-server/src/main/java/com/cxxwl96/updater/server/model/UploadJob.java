@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.model;
+
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * 上传任务
+ * - 由上传线程池中的工作线程更新，请求线程只读
+ *
+ * @author cxxwl96
+ * @since 2024/04/30 20:08
+ */
+@Data
+@Accessors(chain = true)
+public class UploadJob {
+    // 任务ID
+    private String id;
+
+    // 应用名称
+    private String appName;
+
+    // 应用版本
+    private String version;
+
+    // 当前阶段
+    private volatile Stage stage;
+
+    // 上传的zip大小。单位：Byte
+    private long totalBytes;
+
+    // 已处理的zip大小。单位：Byte
+    private volatile long processedBytes;
+
+    // 处理结果
+    private volatile String message;
+
+    // 提交时间
+    private long createTime;
+
+    // 结束时间
+    private volatile long finishTime;
+
+    public boolean isFinished() {
+        return stage == Stage.SUCCESS || stage == Stage.FAILED;
+    }
+
+    public enum Stage {
+        // 排队中
+        QUEUED,
+        // 解压并计算校验
+        EXTRACTING,
+        // 内容去重
+        DEDUPING,
+        // 发布版本
+        PUBLISHING,
+        // 成功
+        SUCCESS,
+        // 失败
+        FAILED
+    }
+}
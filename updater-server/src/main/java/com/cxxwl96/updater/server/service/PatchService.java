@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.service;
+
+import java.io.File;
+
+/**
+ * PatchService
+ *
+ * @author cxxwl96
+ * @since 2024/04/26 22:03
+ */
+public interface PatchService {
+    /**
+     * 后台生成两个版本间变更文件的补丁
+     *
+     * @param appName app name
+     * @param baseVersion 基准版本
+     * @param version 新版本
+     */
+    void generateAsync(String appName, String baseVersion, String version);
+
+    /**
+     * 查找补丁文件
+     *
+     * @param appName app name
+     * @param version 新版本
+     * @param path 文件相对Content的路径
+     * @param baseHash 基准文件哈希值
+     * @return 补丁文件，不存在则返回null
+     */
+    File findPatch(String appName, String version, String path, String baseHash);
+}
@@ -21,6 +21,9 @@ import com.cxxwl96.updater.api.model.Result;
 
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 /**
  * RepositoryService
  *
@@ -40,7 +43,9 @@ public interface RepositoryService {
      * 获取应用最新版本
      *
      * @param appName app name
-     * @return 应用最新版本
+     * @param request request
+     * @param response response
+     * @return 应用最新版本，客户端缓存仍然有效时返回null并响应304
      */
-    Result<String> latest(String appName);
+    Result<String> latest(String appName, HttpServletRequest request, HttpServletResponse response);
 }
@@ -16,12 +16,16 @@
 
 package com.cxxwl96.updater.server.service;
 
+import com.cxxwl96.updater.api.model.BatchRequest;
+import com.cxxwl96.updater.api.model.DeltaRequest;
 import com.cxxwl96.updater.api.model.Result;
 import com.cxxwl96.updater.api.model.UpdateModel;
 import com.cxxwl96.updater.api.model.UploadRequest;
+import com.cxxwl96.updater.server.model.UploadJob;
 
-import org.springframework.web.multipart.MultipartFile;
+import java.io.File;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
@@ -35,10 +39,11 @@ public interface UpdateService {
      * 上传应用
      *
      * @param request request
-     * @param multipartFile multipartFile
+     * @param zipFile 暂存的应用zip文件
+     * @param job 上传任务，用于汇报处理进度
      * @return result
      */
-    Result<?> upload(UploadRequest request, MultipartFile multipartFile);
+    Result<?> upload(UploadRequest request, File zipFile, UploadJob job);
 
     /**
      * 检查更新
@@ -52,24 +57,57 @@ public interface UpdateService {
      * 下载最新应用
      *
      * @param appName app name
+     * @param request request
      * @param response response
      */
-    void downloadLatest(String appName, HttpServletResponse response);
+    void downloadLatest(String appName, HttpServletRequest request, HttpServletResponse response);
 
     /**
      * 下载应用
      *
      * @param appName app name
      * @param version version
+     * @param request request
      * @param response response
      */
-    void download(String appName, String version, HttpServletResponse response);
+    void download(String appName, String version, HttpServletRequest request, HttpServletResponse response);
 
     /**
      * 更新应用单文件
      *
      * @param model model
+     * @param request request
+     * @param response response
+     */
+    void updateSingleFile(UpdateModel model, HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * 批量更新应用文件，一次响应中返回多个文件
+     *
+     * @param appName app name
+     * @param version version
+     * @param request 需要更新的文件路径
+     * @param response response
+     */
+    void updateBatch(String appName, String version, BatchRequest request, HttpServletResponse response);
+
+    /**
+     * 下载应用单文件补丁
+     *
+     * @param model model
+     * @param baseHash 基准文件哈希值
+     * @param request request
+     * @param response response
+     */
+    void updatePatch(UpdateModel model, String baseHash, HttpServletRequest request, HttpServletResponse response);
+
+    /**
+     * 块增量更新应用单文件
+     *
+     * @param appName app name
+     * @param version version
+     * @param request 客户端本地文件的块签名
      * @param response response
      */
-    void updateSingleFile(UpdateModel model, HttpServletResponse response);
+    void updateDelta(String appName, String version, DeltaRequest request, HttpServletResponse response);
 }
@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.service;
+
+import com.cxxwl96.updater.api.model.UploadRequest;
+import com.cxxwl96.updater.server.model.UploadJob;
+
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * UploadJobService
+ *
+ * @author cxxwl96
+ * @since 2024/04/30 20:08
+ */
+public interface UploadJobService {
+    /**
+     * 提交上传任务，上传的文件暂存后立即返回，由上传线程池处理
+     *
+     * @param request request
+     * @param multipartFile multipartFile
+     * @return 上传任务
+     */
+    UploadJob submit(UploadRequest request, MultipartFile multipartFile);
+
+    /**
+     * 获取上传任务
+     *
+     * @param id 任务ID
+     * @return 上传任务
+     */
+    UploadJob getJob(String id);
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.service.impl;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.utils.ChecksumUtil;
+import com.cxxwl96.updater.api.utils.DeltaUtil;
+import com.cxxwl96.updater.server.cache.ManifestCache;
+import com.cxxwl96.updater.server.cache.PlanCache;
+import com.cxxwl96.updater.server.model.Manifest;
+import com.cxxwl96.updater.server.model.ManifestEntry;
+import com.cxxwl96.updater.server.service.PatchService;
+import com.cxxwl96.updater.server.utils.AppRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PreDestroy;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IORuntimeException;
+import cn.hutool.core.thread.ThreadUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * PatchServiceImpl
+ * - 补丁格式: blockSize(int) + 块增量指令流，基准文件为旧版本文件
+ * - 补丁发布前在服务端按基准文件应用一次，重建结果与新版本清单一致才提供给客户端
+ *
+ * @author cxxwl96
+ * @since 2024/04/26 22:03
+ */
+@Slf4j
+@Service
+public class PatchServiceImpl implements PatchService {
+    // 小于该大小的文件直接下载即可，不生成补丁
+    private static final long MIN_PATCH_FILE_SIZE = 64 * 1024;
+
+    // 补丁大小超过新文件大小的该比例时丢弃
+    private static final double MAX_PATCH_RATIO = 0.5;
+
+    @Autowired
+    private AppRepository appRepository;
+
+    @Autowired
+    private ManifestCache manifestCache;
+
+    @Autowired
+    private PlanCache planCache;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(ThreadUtil.newNamedThreadFactory("patch-", true));
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 后台生成两个版本间变更文件的补丁
+     *
+     * @param appName app name
+     * @param baseVersion 基准版本
+     * @param version 新版本
+     */
+    @Override
+    public void generateAsync(String appName, String baseVersion, String version) {
+        executor.submit(() -> {
+            try {
+                generate(appName, baseVersion, version);
+            } catch (Exception exception) {
+                log.error("Generate patch failed: " + exception.getMessage(), exception);
+            }
+        });
+    }
+
+    /**
+     * 查找补丁文件
+     *
+     * @param appName app name
+     * @param version 新版本
+     * @param path 文件相对Content的路径
+     * @param baseHash 基准文件哈希值
+     * @return 补丁文件，不存在则返回null
+     */
+    @Override
+    public File findPatch(String appName, String version, String path, String baseHash) {
+        // 客户端清单中的哈希值格式错误时视为没有补丁
+        if (!HashAlgorithm.isAnyHash(baseHash)) {
+            return null;
+        }
+        File patchFile = appRepository.getPatchFile(appName, version, path, baseHash, false);
+        return patchFile.isFile() ? patchFile : null;
+    }
+
+    private void generate(String appName, String baseVersion, String version) throws IOException {
+        log.info("Generate patch '{}' '{}' -> '{}'", appName, baseVersion, version);
+        Manifest baseManifest = manifestCache.getManifest(appName, baseVersion);
+        Manifest manifest = manifestCache.getManifest(appName, version);
+        // 补丁以基准版本客户端清单中的哈希值命名，算法变化后客户端按全量更新，不会使用补丁
+        if (baseManifest.getAlgorithm() != manifest.getAlgorithm()) {
+            log.info("Skip patch '{}' '{}' -> '{}', hash algorithm changed from {} to {}", appName, baseVersion, version,
+                baseManifest.getAlgorithm(), manifest.getAlgorithm());
+            return;
+        }
+        int count = 0;
+        for (ManifestEntry entry : manifest.getEntries().values()) {
+            ManifestEntry baseEntry = baseManifest.getEntries().get(entry.getPath());
+            if (baseEntry == null || baseEntry.getHash().equals(entry.getHash()) || entry.getSize() < MIN_PATCH_FILE_SIZE) {
+                continue;
+            }
+            File baseFile = appRepository.getSingleInContentFile(appName, baseVersion, entry.getPath(), false);
+            File file = appRepository.getSingleInContentFile(appName, version, entry.getPath(), false);
+            if (!baseFile.isFile() || !file.isFile()) {
+                continue;
+            }
+            File patchFile = appRepository.getPatchFile(appName, version, entry.getPath(), baseEntry.getHash(), false);
+            File tempFile = FileUtil.newFile(patchFile.getPath() + ".tmp");
+            FileUtil.mkParentDirs(tempFile);
+            int blockSize = DeltaUtil.blockSize(file.length());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(FileUtil.getOutputStream(tempFile)))) {
+                out.writeInt(blockSize);
+                DeltaUtil.delta(file, blockSize, DeltaUtil.signatures(baseFile, blockSize), out);
+            }
+            if (tempFile.length() > file.length() * MAX_PATCH_RATIO || !verify(baseFile, tempFile, manifest, entry)) {
+                FileUtil.del(tempFile);
+                continue;
+            }
+            FileUtil.move(tempFile, patchFile, true);
+            count++;
+        }
+        log.info("Generated {} patches '{}' '{}' -> '{}'", count, appName, baseVersion, version);
+        // 已缓存的更新计划中没有补丁信息
+        planCache.invalidate(appName);
+    }
+
+    /**
+     * 按基准文件应用补丁，重建的文件与清单的哈希值一致时补丁可用
+     */
+    private boolean verify(File baseFile, File patchFile, Manifest manifest, ManifestEntry entry) {
+        File rebuiltFile = FileUtil.newFile(patchFile.getPath() + ".verify");
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(FileUtil.getInputStream(patchFile)))) {
+            DeltaUtil.apply(baseFile, in.readInt(), in, rebuiltFile);
+            if (!entry.getHash().equals(ChecksumUtil.hash(rebuiltFile, manifest.getAlgorithm()))) {
+                log.warn("Patch verify failed, hash mismatch: {}", entry.getPath());
+                return false;
+            }
+            return true;
+        } catch (IOException | IORuntimeException exception) {
+            log.warn("Patch verify failed: {} {}", entry.getPath(), exception.getMessage());
+            return false;
+        } finally {
+            FileUtil.del(rebuiltFile);
+        }
+    }
+}
@@ -21,9 +21,12 @@ import com.cxxwl96.updater.api.exception.BadRequestException;
 import com.cxxwl96.updater.api.model.Constant;
 import com.cxxwl96.updater.api.model.FileModel;
 import com.cxxwl96.updater.api.model.Result;
+import com.cxxwl96.updater.server.cache.ManifestCache;
 import com.cxxwl96.updater.server.config.AppConfig;
 import com.cxxwl96.updater.server.service.RepositoryService;
 import com.cxxwl96.updater.server.utils.AppRepository;
+import com.cxxwl96.updater.server.utils.BlobStore;
+import com.cxxwl96.updater.server.utils.DownloadUtil;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.lang.Nullable;
@@ -36,6 +39,9 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.io.FileUtil;
 import cn.hutool.core.util.ArrayUtil;
@@ -55,6 +61,9 @@ public class RepositoryServiceImpl implements RepositoryService {
     @Autowired
     private AppRepository appRepository;
 
+    @Autowired
+    private ManifestCache manifestCache;
+
     /**
      * 获取相对仓库根目录路径下的文件列表
      *
@@ -81,8 +90,10 @@ public class RepositoryServiceImpl implements RepositoryService {
         Map<String, List<String>> ignoreFiles = appConfig.getIgnoreFiles();
         List<FileModel> fileModels = Arrays.stream(files).map(file -> buildFileModel(file, repositoryFile)).filter(fileModel -> {
             String name = fileModel.getName();
-            // 过滤LATEST文件
-            if (Constant.LATEST.equals(name)) {
+            // 过滤LATEST文件、二进制索引文件、blob目录、上传暂存目录、补丁目录、预压缩目录
+            if (Constant.LATEST.equals(name) || Constant.CHECKLIST_INDEX.equals(name) || BlobStore.BLOBS_DIR.equals(name)
+                || AppRepository.STAGING_DIR.equals(name) || AppRepository.PATCHES_DIR.equals(name)
+                || AppRepository.GZIP_DIR.equals(name)) {
                 return false;
             }
             // 过滤默认忽略的文件
@@ -114,11 +125,19 @@ public class RepositoryServiceImpl implements RepositoryService {
      * 获取应用最新版本
      *
      * @param appName app name
-     * @return 应用最新版本
+     * @param request request
+     * @param response response
+     * @return 应用最新版本，客户端缓存仍然有效时返回null并响应304
      */
     @Override
-    public Result<String> latest(String appName) {
+    public Result<String> latest(String appName, HttpServletRequest request, HttpServletResponse response) {
         String latestVersion = appRepository.getLatestVersion(appName, true, true);
+        // 清单哈希包含版本号，LATEST变更后ETag随之变化
+        String hash = manifestCache.getManifest(appName, latestVersion).getChecklist().getHash();
+        long lastModified = appRepository.getLatestFile(appName, true).lastModified();
+        if (DownloadUtil.checkNotModified(request, response, hash, lastModified, DownloadUtil.CACHE_REVALIDATE)) {
+            return null;
+        }
         return Result.success("success", latestVersion);
     }
 
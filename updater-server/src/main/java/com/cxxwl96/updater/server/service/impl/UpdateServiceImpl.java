@@ -17,40 +17,56 @@
 package com.cxxwl96.updater.server.service.impl;
 
 import com.cxxwl96.updater.api.enums.FileOption;
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
 import com.cxxwl96.updater.api.exception.BadRequestException;
+import com.cxxwl96.updater.api.model.BatchRequest;
+import com.cxxwl96.updater.api.model.Constant;
+import com.cxxwl96.updater.api.model.DeltaRequest;
 import com.cxxwl96.updater.api.model.FileModel;
 import com.cxxwl96.updater.api.model.Result;
 import com.cxxwl96.updater.api.model.UpdateModel;
 import com.cxxwl96.updater.api.model.UploadRequest;
+import com.cxxwl96.updater.api.utils.BatchUtil;
+import com.cxxwl96.updater.api.utils.ChecklistIndexUtil;
 import com.cxxwl96.updater.api.utils.ChecksumUtil;
+import com.cxxwl96.updater.api.utils.DeltaUtil;
+import com.cxxwl96.updater.server.cache.ManifestCache;
+import com.cxxwl96.updater.server.cache.PlanCache;
 import com.cxxwl96.updater.server.config.AppConfig;
+import com.cxxwl96.updater.server.model.Manifest;
+import com.cxxwl96.updater.server.model.ManifestEntry;
+import com.cxxwl96.updater.server.model.UploadJob;
+import com.cxxwl96.updater.server.service.PatchService;
 import com.cxxwl96.updater.server.service.UpdateService;
 import com.cxxwl96.updater.server.utils.AppRepository;
+import com.cxxwl96.updater.server.utils.BlobStore;
+import com.cxxwl96.updater.server.utils.CompressionPolicy;
+import com.cxxwl96.updater.server.utils.DownloadUtil;
+import com.cxxwl96.updater.server.utils.UploadPipeline;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.io.IoUtil;
+import cn.hutool.core.io.IORuntimeException;
 import cn.hutool.core.lang.Assert;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.core.util.ZipUtil;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -62,24 +78,37 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 @Service
 public class UpdateServiceImpl implements UpdateService {
+    // 批量更新单次最多返回的文件数
+    private static final int MAX_BATCH_FILES = 10000;
+
     @Autowired
     private AppConfig appConfig;
 
     @Autowired
     private AppRepository appRepository;
 
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private ManifestCache manifestCache;
+
+    @Autowired
+    private PlanCache planCache;
+
+    @Autowired
+    private PatchService patchService;
+
     /**
      * 上传应用
      *
      * @param request request
-     * @param multipartFile multipartFile
+     * @param zipFile 暂存的应用zip文件
+     * @param job 上传任务，用于汇报处理进度
      * @return result
      */
     @Override
-    public Result<?> upload(UploadRequest request, MultipartFile multipartFile) {
-        // 仅支持zip文件
-        Assert.isTrue(StrUtil.endWith(multipartFile.getOriginalFilename(), ".zip"), () -> new BadRequestException("仅支持zip文件上传"));
-
+    public Result<?> upload(UploadRequest request, File zipFile, UploadJob job) {
         String appName = request.getAppName();
         String version = request.getVersion();
 
@@ -90,45 +119,57 @@ public class UpdateServiceImpl implements UpdateService {
         File contentFile = appRepository.getContentFile(appName, version, false);
         FileUtil.mkdir(contentFile);
 
-        try {
-            // 上传的应用zip文件
-            File originalZipFile = FileUtil.newFile(versionFile.getPath() + "/" + multipartFile.getOriginalFilename());
-
-            // 保存文件
-            log.info("Upload file to '{}'", originalZipFile.getPath());
-            multipartFile.transferTo(originalZipFile.getAbsoluteFile());
-
-            // 解压
-            log.info("Unzip file '{}' to '{}'", originalZipFile.getPath(), contentFile.getPath());
-            ZipUtil.unzip(originalZipFile, contentFile);
-
-            // 删除上传的zip
-            log.info("Delete origin zip file '{}'", originalZipFile.getPath());
-            FileUtil.del(originalZipFile);
-
-            // 删除忽略的文件
-            List<String> defaultIgnoreFiles = appConfig.getDefaultIgnoreFiles();
-            List<String> ignoredFiles = appConfig.getIgnoreFiles().get(appName);
-            deleteIgnoredFiles(ignoredFiles, defaultIgnoreFiles, contentFile);
-
-            // 计算校验文件并保存
-            log.info("Checksum file '{}'", contentFile.getPath());
-            String checksum = ChecksumUtil.checksum(appName, version, contentFile);
-            FileUtil.writeUtf8String(checksum, appRepository.getChecksumFile(appName, version, false));
-
-            // 重新压缩zip
-            File zipFile = appRepository.getZipFile(appName, version, false);
-            log.info("Re-zip file '{}'", zipFile.getPath());
-            ZipUtil.zip(contentFile.getAbsolutePath(), zipFile.getAbsolutePath(), true);
+        File distZipFile = appRepository.getZipFile(appName, version, false);
+        HashAlgorithm algorithm = appConfig.getHashAlgorithm(appName);
+        UploadPipeline pipeline = new UploadPipeline(contentFile, distZipFile, algorithm).ignore(appConfig.getDefaultIgnoreFiles())
+            .ignore(appConfig.getIgnoreFiles().get(appName))
+            .compression(new CompressionPolicy(appConfig.getStoreExtensions(), appConfig.getCompressionLevel(appName)))
+            .charset(Charset.forName(appConfig.getUploadCharset()))
+            .gzip(appConfig.isPrecompress() ? appRepository.getGzipFile(appName, version, false) : null);
+        try (InputStream in = new ProgressInputStream(FileUtil.getInputStream(zipFile), job)) {
+            // 单次读取上传的zip: 过滤忽略的文件，解压并计算哈希值，同时写入分发zip
+            log.info("Extract '{}' to '{}' and '{}' with {}", zipFile.getPath(), contentFile.getPath(), distZipFile.getPath(), algorithm);
+            job.setStage(UploadJob.Stage.EXTRACTING);
+            List<FileModel> files = pipeline.process(in, fileModels -> {
+                // 计算校验文件并保存
+                UpdateModel checksumModel = new UpdateModel().setAppName(appName)
+                    .setVersion(version)
+                    .setAlgorithm(algorithm)
+                    .setFiles(fileModels);
+                File checksumFile = appRepository.getChecksumFile(appName, version, false);
+                ChecksumUtil.writeChecksum(checksumModel, checksumFile);
+                ChecklistIndexUtil.write(checksumModel, appRepository.getChecksumIndexFile(appName, version, false));
+                return checksumFile;
+            });
+
+            // 相同内容的文件只存储一份
+            if (blobStore.isEnabled()) {
+                job.setStage(UploadJob.Stage.DEDUPING);
+                log.info("Dedupe file '{}'", contentFile.getPath());
+                blobStore.dedupe(contentFile, files, algorithm);
+            }
 
             // 更新latest
+            job.setStage(UploadJob.Stage.PUBLISHING);
+            String previousVersion = null;
             if (request.isLatest()) {
+                File latestFile = appRepository.getLatestFile(appName, false);
+                previousVersion = latestFile.isFile() ? appRepository.getLatestVersion(appName, false, false) : null;
                 log.info("Update latest file to '{}'", version);
-                FileUtil.writeUtf8String(version, appRepository.getLatestFile(appName, false));
+                FileUtil.writeUtf8String(version, latestFile);
+            }
+            manifestCache.invalidate(appName, version);
+            planCache.invalidate(appName);
+
+            // 后台生成上一个最新版本到当前版本的补丁
+            if (StrUtil.isNotBlank(previousVersion) && !previousVersion.equals(version)) {
+                patchService.generateAsync(appName, previousVersion, version);
             }
             return Result.success("上传成功");
-        } catch (IOException exception) {
+        } catch (IOException | IORuntimeException | IllegalArgumentException exception) {
             log.error(exception.getMessage(), exception);
+            // 清理处理失败的版本，允许重新上传
+            FileUtil.del(versionFile);
             return Result.failed("上传失败: " + exception.getMessage());
         }
     }
@@ -143,35 +184,28 @@ public class UpdateServiceImpl implements UpdateService {
     public Result<UpdateModel> checkUpdate(UpdateModel model) {
         String appName = model.getAppName();
 
-        // 获取最新版本的Checksum
-        String latestVersion = appRepository.getLatestVersion(appName, true, true);
-        File latestChecksumFile = appRepository.getChecksumFile(appName, latestVersion, true);
-
-        String latestChecksum = FileUtil.readUtf8String(latestChecksumFile);
-        UpdateModel latestUpdateModel = ChecksumUtil.parseChecksum(latestChecksum);
-
-        List<FileModel> modifyFileModels = compareAppFiles(latestUpdateModel.getFiles(), model.getFiles());
-
-        // 如果有变更的文件，则补充额外的CheckList
-        if (modifyFileModels.stream().anyMatch(fileModel -> fileModel.getOption() != null)) {
-            // 补充额外的CheckList
-            FileModel fileModel = buildCheckListFileModel(latestUpdateModel.getAppName(), latestUpdateModel.getVersion());
-            modifyFileModels.add(fileModel);
-        }
-
-        // 填充文件大小
-        for (FileModel fileModel : modifyFileModels) {
-            if (fileModel.getOption() == FileOption.DELETE) {
-                fileModel.setSize(0L);
-                continue;
+        String latestVersion = manifestCache.getLatestVersion(appName);
+        // 获取最新版本的清单
+        Manifest latestManifest = manifestCache.getManifest(appName, latestVersion);
+        HashAlgorithm algorithm = HashAlgorithm.orDefault(model.getAlgorithm());
+
+        // 相同清单的客户端共享同一份更新计划
+        List<FileModel> modifyFileModels = planCache.getPlan(appName, latestVersion, algorithm, model.getFiles(), () -> {
+            // 客户端清单的哈希算法与最新版本不同时无法比对，忽略客户端的哈希值，所有文件按修改处理
+            // 更新后客户端的CHECKLIST使用最新版本的算法，之后按正常方式比对
+            List<FileModel> fileModels = algorithm == latestManifest.getAlgorithm() ? model.getFiles() : withoutHashes(model.getFiles());
+            List<FileModel> plan = compareAppFiles(latestManifest, fileModels);
+            // 如果有变更的文件，则补充额外的CheckList
+            if (plan.stream().anyMatch(fileModel -> fileModel.getOption() != null)) {
+                plan.add(latestManifest.getChecklist().toFileModel(FileOption.ADD));
             }
-            File file = appRepository.getSingleInContentFile(appName, latestVersion, fileModel.getPath(), true);
-            if (file.isFile()) {
-                fileModel.setSize(file.length());
-            }
-        }
+            return plan;
+        });
 
-        latestUpdateModel.setFiles(modifyFileModels);
+        UpdateModel latestUpdateModel = new UpdateModel().setAppName(appName)
+            .setVersion(latestVersion)
+            .setAlgorithm(latestManifest.getAlgorithm())
+            .setFiles(modifyFileModels);
         return Result.success(latestUpdateModel);
     }
 
@@ -179,13 +213,18 @@ public class UpdateServiceImpl implements UpdateService {
      * 下载最新应用
      *
      * @param appName app name
+     * @param request request
      * @param response response
      */
     @Override
-    public void downloadLatest(String appName, HttpServletResponse response) {
+    public void downloadLatest(String appName, HttpServletRequest request, HttpServletResponse response) {
         String latestVersion = appRepository.getLatestVersion(appName, true, true);
         File appZipFile = appRepository.getLatestAppZipFile(appName, true);
-        dealDownload(response, appZipFile, appName + "-" + latestVersion + ".zip");
+        String hash = manifestCache.getManifest(appName, latestVersion).getChecklist().getHash();
+        if (DownloadUtil.checkNotModified(request, response, hash, appZipFile.lastModified(), DownloadUtil.CACHE_REVALIDATE)) {
+            return;
+        }
+        DownloadUtil.download(request, response, appZipFile, appName + "-" + latestVersion + ".zip", appConfig.isSendfile());
     }
 
     /**
@@ -193,22 +232,28 @@ public class UpdateServiceImpl implements UpdateService {
      *
      * @param appName app name
      * @param version version
+     * @param request request
      * @param response response
      */
     @Override
-    public void download(String appName, String version, HttpServletResponse response) {
+    public void download(String appName, String version, HttpServletRequest request, HttpServletResponse response) {
         File zipFile = appRepository.getZipFile(appName, version, true);
-        dealDownload(response, zipFile, appName + "-" + version + ".zip");
+        String hash = manifestCache.getManifest(appName, version).getChecklist().getHash();
+        if (DownloadUtil.checkNotModified(request, response, hash, zipFile.lastModified(), DownloadUtil.CACHE_IMMUTABLE)) {
+            return;
+        }
+        DownloadUtil.download(request, response, zipFile, appName + "-" + version + ".zip", appConfig.isSendfile());
     }
 
     /**
      * 更新应用单文件
      *
      * @param model model
+     * @param request request
      * @param response response
      */
     @Override
-    public void updateSingleFile(UpdateModel model, HttpServletResponse response) {
+    public void updateSingleFile(UpdateModel model, HttpServletRequest request, HttpServletResponse response) {
         appRepository.getRootFile(model.getAppName(), true);
         Assert.notEmpty(model.getFiles(), () -> new BadRequestException("请选择需要更新的应用文件"));
         Assert.isTrue(model.getFiles().size() == 1, () -> new BadRequestException("仅支持单文件更新"));
@@ -217,100 +262,195 @@ public class UpdateServiceImpl implements UpdateService {
         String path = model.getFiles().get(0).getPath();
 
         File singleFile = appRepository.getSingleInContentFile(appName, version, path, true);
+        // 两种编码都使用原文件的最后修改时间，gzip响应写入的.part文件以identity编码续传时If-Range一致
+        long lastModified = singleFile.lastModified();
+        Manifest manifest = manifestCache.getManifest(appName, version);
+        ManifestEntry entry = Constant.CHECKLIST.equals(path)
+            ? manifest.getChecklist()
+            : manifest.getEntries().get(path.replace("\\", "/"));
+        String hash = entry == null ? null : entry.getHash();
+
+        // 有预压缩文件时按客户端支持的编码发送，不同编码的ETag不同
+        File gzipFile = appRepository.getSingleInGzipFile(appName, version, path, false);
+        if (gzipFile.isFile()) {
+            response.addHeader("Vary", "Accept-Encoding");
+            if (DownloadUtil.acceptsEncoding(request, "gzip")) {
+                response.setHeader("Content-Encoding", "gzip");
+                singleFile = gzipFile;
+                hash = hash == null ? null : hash + "-gzip";
+            }
+        }
+        if (DownloadUtil.checkNotModified(request, response, hash, lastModified, DownloadUtil.CACHE_IMMUTABLE)) {
+            return;
+        }
 
-        dealDownload(response, singleFile, singleFile.getName());
+        DownloadUtil.download(request, response, singleFile, lastModified, FileUtil.getName(path), appConfig.isSendfile());
     }
 
-    private void deleteIgnoredFiles(List<String> ignoredFiles, List<String> defaultIgnoreFiles, File file) {
-        if (CollUtil.contains(ignoredFiles, file.getName()) || CollUtil.contains(defaultIgnoreFiles, file.getName())) {
-            log.info("Delete ignore file '{}'", file.getPath());
-            FileUtil.del(file);
-            return;
+    /**
+     * 批量更新应用文件，一次响应中返回多个文件
+     *
+     * @param appName app name
+     * @param version version
+     * @param request 需要更新的文件路径
+     * @param response response
+     */
+    @Override
+    public void updateBatch(String appName, String version, BatchRequest request, HttpServletResponse response) {
+        List<String> paths = request.getPaths();
+        Assert.isTrue(paths.size() <= MAX_BATCH_FILES, () -> new BadRequestException("单次最多更新" + MAX_BATCH_FILES + "个文件"));
+        // 开始输出后无法再返回错误，先检查所有文件
+        Map<String, File> files = new HashMap<>();
+        for (String path : paths) {
+            File file = appRepository.getSingleInContentFile(appName, version, path, true);
+            Assert.isTrue(file.isFile(), () -> new BadRequestException("没有找到文件: " + path));
+            files.put(path, file);
         }
-        if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            if (files != null) {
-                for (File childFile : files) {
-                    deleteIgnoredFiles(ignoredFiles, defaultIgnoreFiles, childFile);
-                }
-            }
+
+        try (OutputStream os = response.getOutputStream()) {
+            response.setHeader("Content-type", "application/octet-stream");
+            response.setHeader("Access-Control-Allow-Origin", "*");
+            BatchUtil.write(paths, files::get, os);
+        } catch (IOException | IORuntimeException exception) {
+            log.error("批量更新文件异常失败", exception);
+            throw new BadRequestException("批量更新文件异常失败");
         }
     }
 
-    private FileModel buildCheckListFileModel(String appName, String version) {
-        // 添加Checksum文件
-        File checksumFile = appRepository.getChecksumFile(appName, version, true);
-        File contentFile = appRepository.getContentFile(appName, version, true);
-        FileModel checksumFileModel = ChecksumUtil.crc32FileModel(checksumFile);
-
-        String path = checksumFile.getPath().substring(contentFile.getPath().length());
-        if (path.startsWith("/")) {
-            path = path.substring(1);
-        } else if (path.startsWith("./")) {
-            path = path.substring(2);
+    /**
+     * 下载应用单文件补丁
+     *
+     * @param model model
+     * @param baseHash 基准文件哈希值
+     * @param request request
+     * @param response response
+     */
+    @Override
+    public void updatePatch(UpdateModel model, String baseHash, HttpServletRequest request, HttpServletResponse response) {
+        Assert.notEmpty(model.getFiles(), () -> new BadRequestException("请选择需要更新的应用文件"));
+        String path = model.getFiles().get(0).getPath();
+        File patchFile = patchService.findPatch(model.getAppName(), model.getVersion(), path, baseHash);
+        Assert.notNull(patchFile, () -> new BadRequestException("没有找到补丁文件: " + path));
+        if (DownloadUtil.checkNotModified(request, response, null, patchFile.lastModified(), DownloadUtil.CACHE_IMMUTABLE)) {
+            return;
+        }
+
+        DownloadUtil.download(request, response, patchFile, patchFile.getName(), appConfig.isSendfile());
+    }
+
+    /**
+     * 块增量更新应用单文件
+     *
+     * @param appName app name
+     * @param version version
+     * @param request 客户端本地文件的块签名
+     * @param response response
+     */
+    @Override
+    public void updateDelta(String appName, String version, DeltaRequest request, HttpServletResponse response) {
+        int blockSize = request.getBlockSize();
+        Assert.isTrue(blockSize >= DeltaUtil.MIN_BLOCK_SIZE && blockSize <= DeltaUtil.MAX_BLOCK_SIZE,
+            () -> new BadRequestException("块大小错误"));
+        File singleFile = appRepository.getSingleInContentFile(appName, version, request.getPath(), true);
+        Assert.isTrue(singleFile.isFile(), () -> new BadRequestException("没有找到文件: " + request.getPath()));
+
+        try (OutputStream os = response.getOutputStream()) {
+            response.setHeader("Content-type", "application/octet-stream");
+            response.setHeader("Access-Control-Allow-Origin", "*");
+            DeltaUtil.delta(singleFile, blockSize, request.getSignatures(), os);
+        } catch (IOException | IORuntimeException exception) {
+            log.error("增量更新文件异常失败", exception);
+            throw new BadRequestException("增量更新文件异常失败");
         }
-        return checksumFileModel.setOption(FileOption.ADD).setPath(path);
     }
 
-    private List<FileModel> compareAppFiles(List<FileModel> latestFileModels, List<FileModel> fileModels) {
+    private List<FileModel> withoutHashes(List<FileModel> fileModels) {
         if (CollUtil.isEmpty(fileModels)) {
-            return latestFileModels.stream().map(fileModel -> fileModel.setOption(FileOption.ADD)).collect(Collectors.toList());
+            return fileModels;
         }
-        // 路径转换
-        fileModels = fileModels.stream()
-            .map(fileModel -> fileModel.setPath(fileModel.getPath().replace("\\", "/")))
+        return fileModels.stream()
+            .map(fileModel -> new FileModel().setPath(fileModel.getPath()).setName(fileModel.getName()).setSize(fileModel.getSize()))
             .collect(Collectors.toList());
+    }
 
-        // 转为map
-        Map<String, FileModel> latestFileModelMap = new HashMap<>();
-        for (FileModel fileModel : latestFileModels) {
-            latestFileModelMap.put(fileModel.getPath(), fileModel);
+    private List<FileModel> compareAppFiles(Manifest latestManifest, List<FileModel> fileModels) {
+        String appName = latestManifest.getAppName();
+        String latestVersion = latestManifest.getVersion();
+        Map<String, ManifestEntry> latestEntries = latestManifest.getEntries();
+        if (CollUtil.isEmpty(fileModels)) {
+            return latestEntries.values().stream().map(entry -> entry.toFileModel(FileOption.ADD)).collect(Collectors.toList());
         }
+        // 路径转换，转为map
         Map<String, FileModel> fileModelMap = new HashMap<>();
         for (FileModel fileModel : fileModels) {
-            fileModelMap.put(fileModel.getPath(), fileModel);
+            String path = fileModel.getPath().replace("\\", "/");
+            fileModelMap.put(path, fileModel);
         }
 
         ArrayList<FileModel> modifyFileModels = new ArrayList<>();
 
         // 新增、修改
-        for (FileModel latestFileModel : latestFileModelMap.values()) {
-            FileModel file = fileModelMap.get(latestFileModel.getPath());
+        for (ManifestEntry latestEntry : latestEntries.values()) {
+            FileModel file = fileModelMap.get(latestEntry.getPath());
+            String hash = file == null ? null : ChecksumUtil.hashOf(file);
             if (file == null) {
-                latestFileModel.setOption(FileOption.ADD);
-                modifyFileModels.add(latestFileModel);
-            } else if (!latestFileModel.getCrc32().equals(file.getCrc32())) {
-                latestFileModel.setOption(FileOption.OVERWRITE);
-                modifyFileModels.add(latestFileModel);
+                modifyFileModels.add(latestEntry.toFileModel(FileOption.ADD));
+            } else if (!latestEntry.getHash().equals(hash)) {
+                FileModel fileModel = latestEntry.toFileModel(FileOption.OVERWRITE);
+                // 客户端文件与补丁基准一致时提供补丁
+                File patchFile = patchService.findPatch(appName, latestVersion, latestEntry.getPath(), hash);
+                if (patchFile != null) {
+                    fileModel.setPatchSize(patchFile.length());
+                }
+                modifyFileModels.add(fileModel);
             }
         }
 
         // 删除
-        for (FileModel fileModel : fileModelMap.values()) {
-            if (!latestFileModelMap.containsKey(fileModel.getPath())) {
-                fileModel.setOption(FileOption.DELETE);
-                modifyFileModels.add(fileModel);
+        for (Map.Entry<String, FileModel> entry : fileModelMap.entrySet()) {
+            if (!latestEntries.containsKey(entry.getKey())) {
+                modifyFileModels.add(new FileModel().setOption(FileOption.DELETE)
+                    .setPath(entry.getKey())
+                    .setName(FileUtil.getName(entry.getKey()))
+                    .setCrc32(entry.getValue().getCrc32())
+                    .setHash(entry.getValue().getHash())
+                    .setSize(0L));
             }
         }
 
         return modifyFileModels;
     }
 
-    private void dealDownload(HttpServletResponse response, File file, String filename) {
-        try (InputStream is = FileUtil.getInputStream(file); OutputStream os = response.getOutputStream()) {
-            String contentDisposition = String.format("attachment;fileName=%s;filename*=utf-8''%s", filename,
-                URLEncoder.encode(filename, "UTF-8"));
-            // 响应头设置
-            response.setCharacterEncoding(StandardCharsets.UTF_8.name());
-            response.setHeader("Content-type", "application/x-zip-compressed;charset=UTF-8");
-            response.setHeader("Content-Disposition", contentDisposition);
-            response.setHeader("Content-Length", String.valueOf(file.length()));
-            response.setHeader("Access-Control-Allow-Origin", "*"); // 实现跨域下载
-
-            IoUtil.copy(is, os);
-        } catch (IOException exception) {
-            log.error("下载文件异常失败", exception);
-            throw new BadRequestException("下载文件异常失败");
+    /**
+     * 统计已读取的字节数并更新上传任务进度
+     */
+    private static class ProgressInputStream extends FilterInputStream {
+        private final UploadJob job;
+
+        private long processedBytes;
+
+        private ProgressInputStream(InputStream in, UploadJob job) {
+            super(in);
+            this.job = job;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                job.setProcessedBytes(++processedBytes);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if (read > 0) {
+                processedBytes += read;
+                job.setProcessedBytes(processedBytes);
+            }
+            return read;
         }
     }
 }
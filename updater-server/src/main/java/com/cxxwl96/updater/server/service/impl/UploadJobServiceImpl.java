@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.service.impl;
+
+import com.cxxwl96.updater.api.exception.BadRequestException;
+import com.cxxwl96.updater.api.model.Result;
+import com.cxxwl96.updater.api.model.UploadRequest;
+import com.cxxwl96.updater.server.config.AppConfig;
+import com.cxxwl96.updater.server.model.UploadJob;
+import com.cxxwl96.updater.server.service.UpdateService;
+import com.cxxwl96.updater.server.service.UploadJobService;
+import com.cxxwl96.updater.server.utils.AppRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.lang.Assert;
+import cn.hutool.core.thread.ThreadUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * UploadJobServiceImpl
+ * - 上传请求只负责暂存文件，解压、校验、压缩在独立的有界线程池中执行，不占用Tomcat请求线程
+ * - 结束的任务保留一段时间供查询
+ *
+ * @author cxxwl96
+ * @since 2024/04/30 20:08
+ */
+@Slf4j
+@Service
+public class UploadJobServiceImpl implements UploadJobService {
+    // 结束的任务保留时间
+    private static final long FINISHED_JOB_RETENTION = TimeUnit.HOURS.toMillis(1);
+
+    @Autowired
+    private AppConfig appConfig;
+
+    @Autowired
+    private AppRepository appRepository;
+
+    @Autowired
+    private UpdateService updateService;
+
+    private final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+
+    // 正在处理的应用版本，同一版本不允许重复提交
+    private final Set<String> pendingVersions = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        int workers = appConfig.getUploadWorkers();
+        executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(appConfig.getUploadQueueSize()), ThreadUtil.newNamedThreadFactory("upload-", true));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交上传任务，上传的文件暂存后立即返回，由上传线程池处理
+     *
+     * @param request request
+     * @param multipartFile multipartFile
+     * @return 上传任务
+     */
+    @Override
+    public UploadJob submit(UploadRequest request, MultipartFile multipartFile) {
+        // 仅支持zip文件
+        Assert.isTrue(StrUtil.endWith(multipartFile.getOriginalFilename(), ".zip"), () -> new BadRequestException("仅支持zip文件上传"));
+        String appName = request.getAppName();
+        String version = request.getVersion();
+        Assert.isFalse(appRepository.getVersionFile(appName, version, false).exists(), () -> new BadRequestException("已存在该版本的应用"));
+        String versionKey = appName + "/" + version;
+        Assert.isTrue(pendingVersions.add(versionKey), () -> new BadRequestException("该版本的应用正在处理中"));
+
+        removeExpiredJobs();
+        UploadJob job = new UploadJob().setId(IdUtil.fastSimpleUUID())
+            .setAppName(appName)
+            .setVersion(version)
+            .setStage(UploadJob.Stage.QUEUED)
+            .setCreateTime(System.currentTimeMillis());
+        File stagingFile = appRepository.getStagingFile(job.getId());
+        try {
+            // 暂存上传的文件，请求结束后multipart临时文件会被删除
+            FileUtil.mkParentDirs(stagingFile);
+            multipartFile.transferTo(stagingFile.getAbsoluteFile());
+            job.setTotalBytes(stagingFile.length());
+            jobs.put(job.getId(), job);
+            executor.execute(() -> process(job, request, stagingFile, versionKey));
+        } catch (IOException | RejectedExecutionException exception) {
+            log.error(exception.getMessage(), exception);
+            jobs.remove(job.getId());
+            pendingVersions.remove(versionKey);
+            FileUtil.del(stagingFile);
+            String msg = exception instanceof RejectedExecutionException ? "上传任务过多，请稍后再试" : "上传失败: " + exception.getMessage();
+            throw new BadRequestException(msg);
+        }
+        log.info("Submit upload job '{}' '{}' '{}'", job.getId(), appName, version);
+        return job;
+    }
+
+    /**
+     * 获取上传任务
+     *
+     * @param id 任务ID
+     * @return 上传任务
+     */
+    @Override
+    public UploadJob getJob(String id) {
+        UploadJob job = jobs.get(id);
+        Assert.notNull(job, () -> new BadRequestException("上传任务不存在: " + id));
+        return job;
+    }
+
+    private void process(UploadJob job, UploadRequest request, File stagingFile, String versionKey) {
+        UploadJob.Stage stage = UploadJob.Stage.FAILED;
+        try {
+            Result<?> result = updateService.upload(request, stagingFile, job);
+            job.setMessage(result.getMsg());
+            stage = result.isSuccess() ? UploadJob.Stage.SUCCESS : UploadJob.Stage.FAILED;
+        } catch (Exception exception) {
+            log.error(exception.getMessage(), exception);
+            job.setMessage("上传失败: " + exception.getMessage());
+        } finally {
+            pendingVersions.remove(versionKey);
+            FileUtil.del(stagingFile);
+            job.setFinishTime(System.currentTimeMillis());
+            job.setStage(stage);
+        }
+        log.info("Upload job '{}' {}: {}", job.getId(), stage, job.getMessage());
+    }
+
+    private void removeExpiredJobs() {
+        long now = System.currentTimeMillis();
+        jobs.values().removeIf(job -> job.isFinished() && now - job.getFinishTime() > FINISHED_JOB_RETENTION);
+    }
+}
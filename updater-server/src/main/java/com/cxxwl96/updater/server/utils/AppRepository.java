@@ -16,6 +16,7 @@
 
 package com.cxxwl96.updater.server.utils;
 
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
 import com.cxxwl96.updater.api.exception.BadRequestException;
 import com.cxxwl96.updater.api.model.Constant;
 import com.cxxwl96.updater.server.config.AppConfig;
@@ -36,6 +37,14 @@ import cn.hutool.core.lang.Assert;
  */
 @Component
 public class AppRepository {
+    // 以.开头，避免与应用名同名的Content目录冲突
+    public static final String PATCHES_DIR = ".patches";
+
+    // 以.开头，避免与应用名同名的Content目录冲突
+    public static final String GZIP_DIR = ".gzip";
+
+    public static final String STAGING_DIR = ".staging";
+
     @Autowired
     private AppConfig appConfig;
 
@@ -43,6 +52,16 @@ public class AppRepository {
         return FileUtil.newFile(appConfig.getRepository());
     }
 
+    /**
+     * 获取上传暂存文件路径
+     *
+     * @param jobId 上传任务ID
+     * @return 上传暂存文件路径
+     */
+    public File getStagingFile(String jobId) {
+        return FileUtil.newFile(String.format("%s/%s/%s.zip", getRepositoryFile().getPath(), STAGING_DIR, jobId));
+    }
+
     /**
      * 获取应用根路径
      *
@@ -112,6 +131,20 @@ public class AppRepository {
         return file;
     }
 
+    /**
+     * 获取应用二进制Checksum索引文件路径
+     *
+     * @param appName 应用名
+     * @param version 应用版本
+     * @param checkExist 检查是否存在，不存在则抛异常
+     * @return 应用二进制Checksum索引文件路径
+     */
+    public File getChecksumIndexFile(String appName, String version, boolean checkExist) {
+        File file = FileUtil.newFile(String.format("%s/%s", getVersionFile(appName, version, checkExist), Constant.CHECKLIST_INDEX));
+        checkFileExist(checkExist, file, "没有找到" + Constant.CHECKLIST_INDEX + "文件");
+        return file;
+    }
+
     /**
      * 获取应用最新版本文件路径
      *
@@ -152,6 +185,56 @@ public class AppRepository {
         return file;
     }
 
+    /**
+     * 获取应用gzip预压缩文件夹路径
+     *
+     * @param appName 应用名
+     * @param version 应用版本
+     * @param checkExist 检查是否存在，不存在则抛异常
+     * @return 应用gzip预压缩文件夹路径
+     */
+    public File getGzipFile(String appName, String version, boolean checkExist) {
+        File file = FileUtil.newFile(String.format("%s/%s", getVersionFile(appName, version, checkExist), GZIP_DIR));
+        checkFileExist(checkExist, file, "gzip目录不存在");
+        return file;
+    }
+
+    /**
+     * 获取应用单个文件的gzip预压缩文件路径
+     *
+     * @param appName 应用名
+     * @param version 应用版本
+     * @param pathRelativeToContent 文件相对Content的路径
+     * @param checkExist 检查是否存在，不存在则抛异常
+     * @return 应用单个文件的gzip预压缩文件路径
+     */
+    public File getSingleInGzipFile(String appName, String version, String pathRelativeToContent, boolean checkExist) {
+        File file = FileUtil.newFile(String.format("%s/%s.gz", getGzipFile(appName, version, checkExist), pathRelativeToContent));
+        checkFileExist(checkExist, file, "没有找到gzip文件: " + pathRelativeToContent);
+        return file;
+    }
+
+    /**
+     * 获取应用补丁文件路径
+     *
+     * @param appName 应用名
+     * @param version 应用版本
+     * @param pathRelativeToContent 文件相对Content的路径
+     * @param baseHash 基准文件哈希值
+     * @param checkExist 检查是否存在，不存在则抛异常
+     * @return 应用补丁文件路径
+     */
+    public File getPatchFile(String appName, String version, String pathRelativeToContent, String baseHash, boolean checkExist) {
+        // 哈希值和路径来自客户端，拦截路径注入
+        Assert.isTrue(HashAlgorithm.isAnyHash(baseHash), () -> new BadRequestException("错误的基准文件哈希值"));
+        Assert.isFalse(pathRelativeToContent.contains("../") || pathRelativeToContent.contains("/.."),
+            () -> new BadRequestException("错误的文件路径: " + pathRelativeToContent));
+        File file = FileUtil.newFile(
+            String.format("%s/%s/%s.%s.patch", getVersionFile(appName, version, checkExist), PATCHES_DIR, pathRelativeToContent, baseHash));
+        checkFileExist(checkExist, file, "没有找到补丁文件: " + pathRelativeToContent);
+        return file;
+    }
+
     /**
      * 获取应用最新版本号
      *
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.utils;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.model.FileModel;
+import com.cxxwl96.updater.server.config.AppConfig;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.crypto.digest.DigestUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 内容寻址存储
+ * - 每个不同的文件内容按SHA-256只存储一份: {repository}/.blobs/{hash前两位}/{hash}
+ * - 版本Content目录中的文件为指向blob的硬链接，读取方无需感知
+ *
+ * @author cxxwl96
+ * @since 2024/04/22 21:16
+ */
+@Slf4j
+@Component
+public class BlobStore {
+    public static final String BLOBS_DIR = ".blobs";
+
+    @Autowired
+    private AppConfig appConfig;
+
+    @Autowired
+    private AppRepository appRepository;
+
+    public boolean isEnabled() {
+        return appConfig.isBlobStore();
+    }
+
+    public File getBlobsFile() {
+        return FileUtil.newFile(String.format("%s/%s", appRepository.getRepositoryFile().getPath(), BLOBS_DIR));
+    }
+
+    /**
+     * 获取blob文件路径
+     *
+     * @param hash 文件内容SHA-256
+     * @return blob文件路径
+     */
+    public File getBlobFile(String hash) {
+        return FileUtil.newFile(String.format("%s/%s/%s", getBlobsFile().getPath(), hash.substring(0, 2), hash));
+    }
+
+    /**
+     * 将Content目录下的文件替换为指向blob的硬链接
+     * - 清单算法为SHA-256时直接使用上传时计算的哈希值，不再读取文件
+     * - 其他算法不能用于内容寻址，需要再读取一遍文件计算SHA-256
+     *
+     * @param contentFile 应用Content目录
+     * @param fileModels 应用文件列表，路径相对于Content目录
+     * @param algorithm 文件列表的哈希算法
+     */
+    public void dedupe(File contentFile, List<FileModel> fileModels, HashAlgorithm algorithm) {
+        AtomicLong savedBytes = new AtomicLong();
+        fileModels.parallelStream().forEach(fileModel -> {
+            File file = FileUtil.file(contentFile, fileModel.getPath());
+            String hash = algorithm == HashAlgorithm.SHA256 ? fileModel.getHash() : DigestUtil.sha256Hex(file);
+            if (link(file, hash)) {
+                savedBytes.addAndGet(file.length());
+            }
+        });
+        log.info("Dedupe '{}', {} files, saved {} bytes", contentFile.getPath(), fileModels.size(), savedBytes.get());
+    }
+
+    /**
+     * 将文件链接到blob
+     *
+     * @param file 文件
+     * @param hash 文件内容SHA-256
+     * @return 是否复用了已存在的blob
+     */
+    private boolean link(File file, String hash) {
+        Path blob = getBlobFile(hash).toPath();
+        Path path = file.toPath();
+        try {
+            Files.createDirectories(blob.getParent());
+            try {
+                // blob不存在，直接以当前文件作为blob
+                Files.createLink(blob, path);
+                return false;
+            } catch (FileAlreadyExistsException ignored) {
+                // blob已存在，替换为硬链接
+            }
+            if (Files.isSameFile(blob, path)) {
+                return false;
+            }
+            Path temp = path.resolveSibling(path.getFileName() + ".blob");
+            Files.createLink(temp, blob);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (UnsupportedOperationException | IOException exception) {
+            // 文件系统不支持硬链接时保留原文件
+            log.warn("Link '{}' to blob failed: {}", file.getPath(), exception.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.utils;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import cn.hutool.core.io.FileUtil;
+import lombok.Getter;
+
+/**
+ * 分发zip条目的压缩策略
+ * - 按扩展名配置的已压缩格式（jar、png、mp4等）直接存储
+ * - 其余文件用最快级别试压缩开头的一段数据，压缩率太低则直接存储
+ *
+ * @author cxxwl96
+ * @since 2024/05/02 10:37
+ */
+public class CompressionPolicy {
+    // 试压缩的数据量，过小的样本不做判断
+    private static final int MIN_SAMPLE_SIZE = 512;
+
+    // 试压缩后的大小超过原大小的该比例时直接存储
+    private static final double MAX_COMPRESSED_RATIO = 0.9;
+
+    // 直接存储的扩展名，小写
+    private final Set<String> storeExtensions = new HashSet<>();
+
+    // 压缩级别 0-9，-1为默认级别，0为全部直接存储
+    @Getter
+    private final int level;
+
+    public CompressionPolicy(Collection<String> storeExtensions, int level) {
+        if (storeExtensions != null) {
+            storeExtensions.forEach(extension -> this.storeExtensions.add(extension.toLowerCase(Locale.ROOT)));
+        }
+        this.level = level;
+    }
+
+    /**
+     * 判断条目是否直接存储
+     *
+     * @param path 条目路径
+     * @param sample 条目开头的数据
+     * @param length 数据长度
+     * @return 是否直接存储
+     */
+    public boolean isStore(String path, byte[] sample, int length) {
+        if (level == Deflater.NO_COMPRESSION) {
+            return true;
+        }
+        String extension = FileUtil.extName(path);
+        if (extension != null && storeExtensions.contains(extension.toLowerCase(Locale.ROOT))) {
+            return true;
+        }
+        if (length < MIN_SAMPLE_SIZE) {
+            return false;
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[length];
+            int compressed = 0;
+            while (!deflater.finished() && compressed < length) {
+                compressed += deflater.deflate(buffer);
+            }
+            return compressed > length * MAX_COMPRESSED_RATIO;
+        } finally {
+            deflater.end();
+        }
+    }
+}
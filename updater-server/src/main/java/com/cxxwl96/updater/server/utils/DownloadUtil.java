@@ -0,0 +1,386 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.utils;
+
+import com.cxxwl96.updater.api.exception.BadRequestException;
+
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 文件下载，支持HTTP Range断点续传
+ * - 单个范围返回206及Content-Range
+ * - 多个范围返回206及multipart/byteranges，重叠或相邻的范围合并后发送
+ * - 范围总长度超过文件长度时忽略Range，返回完整文件
+ * - 范围均无法满足时返回416
+ * - If-Range与文件最后修改时间或ETag不一致时忽略Range，返回完整文件
+ * - 完整文件和单个范围优先交给Tomcat sendfile发送，由容器通过FileChannel.transferTo零拷贝写入socket，
+ *   不支持sendfile时回退到缓冲区复制
+ *
+ * @author cxxwl96
+ * @since 2024/05/06 21:08
+ */
+@Slf4j
+public class DownloadUtil {
+    // 版本固定的地址内容不会变化，允许客户端和代理长期缓存
+    public static final String CACHE_IMMUTABLE = "public, max-age=31536000, immutable";
+
+    // 最新版本的地址内容会随发布变化，每次使用前需要重新验证
+    public static final String CACHE_REVALIDATE = "no-cache";
+
+    private static final String CONTENT_TYPE = "application/x-zip-compressed";
+
+    // 单次请求最多接受的范围个数，超过时返回完整文件
+    private static final int MAX_RANGES = 32;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 小于该大小的文件直接复制，与Tomcat DefaultServlet的sendfileSize一致
+    private static final long SENDFILE_MIN_SIZE = 48 * 1024;
+
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    private DownloadUtil() {
+    }
+
+    /**
+     * 下载文件
+     *
+     * @param request request，为null时不处理Range
+     * @param response response
+     * @param file 文件
+     * @param filename 下载文件名
+     * @param sendfile 是否尝试使用sendfile发送
+     */
+    public static void download(HttpServletRequest request, HttpServletResponse response, File file, String filename,
+        boolean sendfile) {
+        download(request, response, file, file.lastModified(), filename, sendfile);
+    }
+
+    /**
+     * 下载文件，指定Last-Modified
+     * - 同一内容的不同编码使用原文件的最后修改时间，客户端以identity编码续传时If-Range才能匹配
+     *
+     * @param request request，为null时不处理Range
+     * @param response response
+     * @param file 文件
+     * @param fileLastModified 作为Last-Modified和If-Range校验的最后修改时间
+     * @param filename 下载文件名
+     * @param sendfile 是否尝试使用sendfile发送
+     */
+    public static void download(HttpServletRequest request, HttpServletResponse response, File file, long fileLastModified,
+        String filename, boolean sendfile) {
+        long length = file.length();
+        long lastModified = fileLastModified / 1000 * 1000; // HTTP日期精确到秒
+        try {
+            String contentDisposition = String.format("attachment;fileName=%s;filename*=utf-8''%s", filename,
+                URLEncoder.encode(filename, "UTF-8"));
+            // 响应头设置
+            response.setHeader("Content-Disposition", contentDisposition);
+            response.setHeader("Accept-Ranges", "bytes");
+            response.setHeader("Last-Modified", DateUtil.formatHttpDate(new Date(lastModified)));
+            response.setHeader("Access-Control-Allow-Origin", "*"); // 实现跨域下载
+
+            List<long[]> ranges = request == null ? null : parseRanges(request.getHeader("Range"), length);
+            if (ranges != null && !ifRangeMatches(request, response, lastModified)) {
+                ranges = null;
+            }
+            if (ranges == null) {
+                response.setHeader("Content-type", CONTENT_TYPE + ";charset=UTF-8");
+                response.setHeader("Content-Length", String.valueOf(length));
+                writeRange(request, response, file, new long[] {0, length - 1}, sendfile);
+            } else if (ranges.isEmpty()) {
+                response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                response.setHeader("Content-Range", "bytes */" + length);
+            } else if (ranges.size() == 1) {
+                long[] range = ranges.get(0);
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-type", CONTENT_TYPE + ";charset=UTF-8");
+                response.setHeader("Content-Range", contentRange(range, length));
+                response.setHeader("Content-Length", String.valueOf(range[1] - range[0] + 1));
+                writeRange(request, response, file, range, sendfile);
+            } else {
+                String boundary = IdUtil.fastSimpleUUID();
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-type", "multipart/byteranges; boundary=" + boundary);
+                long contentLength = 0;
+                for (long[] range : ranges) {
+                    contentLength += partHeader(boundary, range, length).length + range[1] - range[0] + 1;
+                }
+                contentLength += partEnd(boundary).length;
+                response.setHeader("Content-Length", String.valueOf(contentLength));
+                if (!isHead(request)) {
+                    writeRanges(file, response, ranges, boundary);
+                }
+            }
+        } catch (IOException exception) {
+            log.error("下载文件异常失败", exception);
+            throw new BadRequestException("下载文件异常失败");
+        }
+    }
+
+    /**
+     * 设置缓存策略并处理条件请求If-None-Match、If-Modified-Since
+     *
+     * @param request request
+     * @param response response
+     * @param hash 内容哈希值，作为强ETag，为null时只使用Last-Modified
+     * @param lastModified 最后修改时间
+     * @param cacheControl Cache-Control
+     * @return 客户端缓存是否仍然有效，有效时已响应304
+     */
+    public static boolean checkNotModified(HttpServletRequest request, HttpServletResponse response, String hash,
+        long lastModified, String cacheControl) {
+        response.setHeader("Cache-Control", cacheControl);
+        String etag = hash == null ? null : "\"" + hash + "\"";
+        return new ServletWebRequest(request, response).checkNotModified(etag, lastModified);
+    }
+
+    /**
+     * 客户端是否接受指定的内容编码
+     *
+     * @param request request
+     * @param encoding 内容编码，如: gzip
+     * @return 是否接受，Accept-Encoding中q=0表示不接受
+     */
+    public static boolean acceptsEncoding(HttpServletRequest request, String encoding) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (StrUtil.isBlank(acceptEncoding)) {
+            return false;
+        }
+        for (String item : StrUtil.split(acceptEncoding, ',', true, true)) {
+            List<String> parts = StrUtil.split(item, ';', true, true);
+            if (!parts.get(0).equalsIgnoreCase(encoding)) {
+                continue;
+            }
+            for (String param : parts.subList(1, parts.size())) {
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException exception) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 解析Range请求头
+     *
+     * @param header Range请求头，如: bytes=0-499,1000-,-500
+     * @param length 文件长度
+     * @return 可满足的范围[start, end]，null表示不处理Range返回完整文件，空列表表示范围均无法满足
+     */
+    static List<long[]> parseRanges(String header, long length) {
+        if (StrUtil.isBlank(header) || !header.startsWith("bytes=")) {
+            return null;
+        }
+        List<String> specs = StrUtil.split(header.substring("bytes=".length()), ',', true, true);
+        if (specs.isEmpty() || specs.size() > MAX_RANGES) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>();
+        for (String spec : specs) {
+            int index = spec.indexOf('-');
+            if (index < 0) {
+                return null;
+            }
+            long start;
+            long end;
+            try {
+                if (index == 0) {
+                    // 后缀范围: -500表示最后500字节
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    start = Math.max(length - suffix, 0);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, index));
+                    String last = spec.substring(index + 1);
+                    end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                    if (end < start) {
+                        // 语法错误的范围使整个Range无效
+                        return null;
+                    }
+                    end = Math.min(end, length - 1);
+                }
+            } catch (NumberFormatException exception) {
+                return null;
+            }
+            if (start < 0) {
+                return null;
+            }
+            if (start < length) {
+                ranges.add(new long[] {start, end});
+            }
+        }
+        // 请求的范围总长度超过文件长度时，返回完整文件比重复发送同一段内容更省
+        long total = 0;
+        for (long[] range : ranges) {
+            total += range[1] - range[0] + 1;
+        }
+        if (total > length) {
+            return null;
+        }
+        return mergeRanges(ranges);
+    }
+
+    /**
+     * 按起始位置排序，合并重叠或相邻的范围
+     */
+    private static List<long[]> mergeRanges(List<long[]> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+        List<long[]> merged = new ArrayList<>();
+        long[] current = ranges.get(0);
+        for (long[] range : ranges.subList(1, ranges.size())) {
+            if (range[0] <= current[1] + 1) {
+                current = new long[] {current[0], Math.max(current[1], range[1])};
+            } else {
+                merged.add(current);
+                current = range;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+
+    private static boolean ifRangeMatches(HttpServletRequest request, HttpServletResponse response, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (StrUtil.isBlank(ifRange)) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // 实体标签，只有强ETag完全一致时续传
+            return ifRange.equals(response.getHeader("ETag"));
+        }
+        try {
+            return request.getDateHeader("If-Range") == lastModified;
+        } catch (IllegalArgumentException exception) {
+            return false;
+        }
+    }
+
+    private static void writeRange(HttpServletRequest request, HttpServletResponse response, File file, long[] range,
+        boolean sendfile) throws IOException {
+        // HEAD请求只需要响应头，容器会丢弃写入的响应体，不读取文件
+        if (isHead(request)) {
+            return;
+        }
+        if (sendfile && trySendfile(request, file, range)) {
+            return;
+        }
+        writeRanges(file, response, Collections.singletonList(range), null);
+    }
+
+    /**
+     * 将文件范围交给Tomcat sendfile发送，响应体由容器在servlet返回后写出
+     *
+     * @return 是否已交给sendfile
+     */
+    private static boolean trySendfile(HttpServletRequest request, File file, long[] range) {
+        if (request == null || !Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            return false;
+        }
+        if (range[1] - range[0] + 1 < SENDFILE_MIN_SIZE) {
+            return false;
+        }
+        try {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.getCanonicalPath());
+        } catch (IOException exception) {
+            return false;
+        }
+        request.setAttribute(SENDFILE_START_ATTR, range[0]);
+        request.setAttribute(SENDFILE_END_ATTR, range[1] + 1);
+        return true;
+    }
+
+    private static boolean isHead(HttpServletRequest request) {
+        return request != null && "HEAD".equalsIgnoreCase(request.getMethod());
+    }
+
+    private static void writeRanges(File file, HttpServletResponse response, List<long[]> ranges, String boundary)
+        throws IOException {
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); OutputStream os = response.getOutputStream()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (long[] range : ranges) {
+                if (boundary != null) {
+                    os.write(partHeader(boundary, range, length));
+                }
+                raf.seek(range[0]);
+                long remaining = range[1] - range[0] + 1;
+                while (remaining > 0) {
+                    int read = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException("文件长度已变化: " + file.getName());
+                    }
+                    os.write(buffer, 0, read);
+                    remaining -= read;
+                }
+            }
+            if (boundary != null) {
+                os.write(partEnd(boundary));
+            }
+        }
+    }
+
+    private static String contentRange(long[] range, long length) {
+        return String.format("bytes %d-%d/%d", range[0], range[1], length);
+    }
+
+    private static byte[] partHeader(String boundary, long[] range, long length) {
+        return String.format("\r\n--%s\r\nContent-Type: %s\r\nContent-Range: %s\r\n\r\n", boundary, CONTENT_TYPE,
+            contentRange(range, length)).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] partEnd(String boundary) {
+        return String.format("\r\n--%s--\r\n", boundary).getBytes(StandardCharsets.US_ASCII);
+    }
+}
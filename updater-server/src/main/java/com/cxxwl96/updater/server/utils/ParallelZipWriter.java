@@ -0,0 +1,586 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import cn.hutool.core.thread.ThreadUtil;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 并行压缩的zip写入
+ * - 参考pigz，每个条目按固定大小分块，各块在线程池中独立deflate，以前一块末尾32K作为预设字典保证压缩率
+ * - 非末尾块以SYNC_FLUSH结束，按顺序拼接即为一个完整的deflate流，输出为标准zip
+ * - 本地文件头在条目写完后回填crc32和大小，不使用数据描述符；超过4G的条目、偏移和条目数使用zip64
+ * - 已压缩过的条目可以不压缩直接存储（STORED），下载后无需解压缩即可读取
+ * - 关闭后可获取各条目数据在zip中的位置，压缩数据可直接复用为gzip等格式
+ * - 只能由一个线程调用，压缩在内部线程池中进行
+ *
+ * @author cxxwl96
+ * @since 2024/05/01 15:22
+ */
+public class ParallelZipWriter implements Closeable {
+    // 压缩块大小
+    private static final int BLOCK_SIZE = 128 * 1024;
+
+    // deflate窗口大小，即预设字典的大小
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    // 大小未知或可能超过4G的条目在本地文件头中预留zip64扩展字段
+    private static final long ZIP64_RESERVE_THRESHOLD = 0xF0000000L;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+
+    // 不需要zip64时预留字段改写为填充字段（与zipalign相同的ID），解压工具会忽略
+    private static final int PADDING_EXTRA_ID = 0xD935;
+
+    private static final int RESERVED_EXTRA_SIZE = 20;
+
+    private static final int FLAG_UTF8 = 1 << 11;
+
+    private final FileChannel channel;
+
+    private final ExecutorService executor;
+
+    // 同时在压缩中的块数量上限，限制内存占用
+    private final int maxPendingBlocks;
+
+    private final Deque<Pending> pending = new ArrayDeque<>();
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private final byte[] writeBuffer = new byte[WRITE_BUFFER_SIZE];
+
+    private int writeBufferSize;
+
+    // 已写入channel的字节数
+    private long flushedPosition;
+
+    private Entry current;
+
+    private byte[] block;
+
+    private int blockSize;
+
+    // 前一块的末尾，作为下一块的预设字典
+    private byte[] dictionary;
+
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    private boolean closed;
+
+    public ParallelZipWriter(File file) throws IOException {
+        this(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelZipWriter(File file, int threads) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        this.executor = Executors.newFixedThreadPool(threads, ThreadUtil.newNamedThreadFactory("zip-", true));
+        this.maxPendingBlocks = threads * 4;
+    }
+
+    /**
+     * 设置后续条目的压缩级别
+     *
+     * @param level 压缩级别 0-9，-1为默认级别
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * 写入文件夹条目
+     *
+     * @param name 条目名，以/结尾
+     * @param time 修改时间，-1为当前时间
+     * @throws IOException IOException
+     */
+    public void putDirectory(String name, long time) throws IOException {
+        closeEntry();
+        Entry entry = new Entry(name, time, ZipEntry.STORED, false);
+        entries.add(entry);
+        pending.add(() -> writeLocalHeader(entry));
+    }
+
+    /**
+     * 开始写入压缩的文件条目
+     *
+     * @param name 条目名
+     * @param time 修改时间，-1为当前时间
+     * @param sizeHint 文件大小，未知时为-1，用于决定是否预留zip64扩展字段
+     * @throws IOException IOException
+     */
+    public void putNextEntry(String name, long time, long sizeHint) throws IOException {
+        putNextEntry(name, time, sizeHint, false);
+    }
+
+    /**
+     * 开始写入文件条目
+     *
+     * @param name 条目名
+     * @param time 修改时间，-1为当前时间
+     * @param sizeHint 文件大小，未知时为-1，用于决定是否预留zip64扩展字段
+     * @param store 是否不压缩直接存储
+     * @throws IOException IOException
+     */
+    public void putNextEntry(String name, long time, long sizeHint, boolean store) throws IOException {
+        closeEntry();
+        int method = store ? ZipEntry.STORED : ZipEntry.DEFLATED;
+        Entry entry = new Entry(name, time, method, sizeHint < 0 || sizeHint >= ZIP64_RESERVE_THRESHOLD);
+        entries.add(entry);
+        pending.add(() -> writeLocalHeader(entry));
+        current = entry;
+        block = new byte[BLOCK_SIZE];
+        blockSize = 0;
+        dictionary = null;
+    }
+
+    /**
+     * 写入当前条目的数据
+     *
+     * @param bytes 数据
+     * @param offset 偏移
+     * @param length 长度
+     * @throws IOException IOException
+     */
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (current == null) {
+            throw new ZipException("no current zip entry");
+        }
+        current.crc.update(bytes, offset, length);
+        current.size += length;
+        while (length > 0) {
+            int count = Math.min(length, BLOCK_SIZE - blockSize);
+            System.arraycopy(bytes, offset, block, blockSize, count);
+            blockSize += count;
+            offset += count;
+            length -= count;
+            if (blockSize == BLOCK_SIZE) {
+                // 最后一块要等条目结束时才能确定，因此块满时暂不提交
+                submitBlock(false);
+            }
+        }
+    }
+
+    /**
+     * 结束当前条目
+     *
+     * @throws IOException IOException
+     */
+    public void closeEntry() throws IOException {
+        if (current == null) {
+            return;
+        }
+        submitBlock(true);
+        Entry entry = current;
+        entry.crc32 = entry.crc.getValue();
+        pending.add(() -> patchLocalHeader(entry));
+        current = null;
+        block = null;
+        dictionary = null;
+    }
+
+    /**
+     * 写入中央目录并关闭，重复调用无效
+     *
+     * @throws IOException IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            closeEntry();
+            drain(0);
+            writeCentralDirectory();
+            flush();
+        } finally {
+            executor.shutdownNow();
+            channel.close();
+        }
+    }
+
+    /**
+     * 获取已写入的文件条目，关闭后可用
+     *
+     * @return 文件条目
+     */
+    public List<WrittenEntry> getEntries() {
+        List<WrittenEntry> writtenEntries = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!entry.isDirectory()) {
+                long dataOffset = entry.offset + 30 + entry.name.length + (entry.reserveZip64 ? RESERVED_EXTRA_SIZE : 0);
+                writtenEntries.add(new WrittenEntry(new String(entry.name, StandardCharsets.UTF_8), entry.method, entry.crc32,
+                    entry.size, entry.compressedSize, dataOffset));
+            }
+        }
+        return writtenEntries;
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        if (blockSize == 0 && !last) {
+            return;
+        }
+        Entry entry = current;
+        byte[] input = block;
+        int inputSize = blockSize;
+        if (entry.method == ZipEntry.STORED) {
+            // 直接存储的块按顺序原样写出
+            pending.add(() -> {
+                entry.compressedSize += inputSize;
+                output(input, 0, inputSize);
+            });
+            if (!last) {
+                block = new byte[BLOCK_SIZE];
+                blockSize = 0;
+            }
+            drain(maxPendingBlocks);
+            return;
+        }
+        byte[] dict = dictionary;
+        int entryLevel = level;
+        Future<byte[]> future = executor.submit(() -> deflate(input, inputSize, dict, entryLevel, last));
+        pending.add(() -> {
+            byte[] compressed = get(future);
+            entry.compressedSize += compressed.length;
+            output(compressed, 0, compressed.length);
+        });
+        if (!last) {
+            dictionary = Arrays.copyOfRange(input, inputSize - DICTIONARY_SIZE, inputSize);
+            block = new byte[BLOCK_SIZE];
+            blockSize = 0;
+        }
+        drain(maxPendingBlocks);
+    }
+
+    private static byte[] deflate(byte[] input, int length, byte[] dictionary, int level, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input, 0, length);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+            byte[] buffer = new byte[Math.max(length / 2, 1024)];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                // SYNC_FLUSH输出所有数据并按字节对齐，输出缓冲区写满时需要继续调用
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    out.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * 按顺序写出已完成的块，直到待写出的数量不超过上限
+     */
+    private void drain(int limit) throws IOException {
+        while (pending.size() > limit) {
+            pending.poll().write();
+        }
+    }
+
+    private static byte[] get(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException(exception);
+        } catch (ExecutionException exception) {
+            throw new IOException(exception.getCause());
+        }
+    }
+
+    private void writeLocalHeader(Entry entry) throws IOException {
+        entry.offset = position();
+        ByteBuffer header = buffer(30 + entry.name.length + (entry.reserveZip64 ? RESERVED_EXTRA_SIZE : 0));
+        header.putInt(0x04034b50);
+        header.putShort((short) (entry.reserveZip64 ? 45 : entry.method == ZipEntry.DEFLATED ? 20 : 10));
+        header.putShort((short) FLAG_UTF8);
+        header.putShort((short) entry.method);
+        header.putInt(entry.dosTime);
+        // crc32和大小在条目结束后回填
+        header.putInt((int) entry.crc32);
+        header.putInt(0);
+        header.putInt(0);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) (entry.reserveZip64 ? RESERVED_EXTRA_SIZE : 0));
+        header.put(entry.name);
+        if (entry.reserveZip64) {
+            header.putShort((short) PADDING_EXTRA_ID);
+            header.putShort((short) 16);
+            header.putLong(0);
+            header.putLong(0);
+        }
+        output(header.array(), 0, header.position());
+    }
+
+    private void patchLocalHeader(Entry entry) throws IOException {
+        boolean zip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+        if (zip64 && !entry.reserveZip64) {
+            throw new ZipException("zip entry size exceeds the reserved header: " + new String(entry.name, StandardCharsets.UTF_8));
+        }
+        ByteBuffer fields = buffer(12);
+        fields.putInt((int) entry.crc32);
+        fields.putInt((int) (zip64 ? ZIP64_MAGIC : entry.compressedSize));
+        fields.putInt((int) (zip64 ? ZIP64_MAGIC : entry.size));
+        patch(entry.offset + 14, fields.array());
+        if (zip64) {
+            ByteBuffer extra = buffer(RESERVED_EXTRA_SIZE);
+            extra.putShort((short) ZIP64_EXTRA_ID);
+            extra.putShort((short) 16);
+            extra.putLong(entry.size);
+            extra.putLong(entry.compressedSize);
+            patch(entry.offset + 30 + entry.name.length, extra.array());
+        }
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        long centralOffset = position();
+        for (Entry entry : entries) {
+            boolean sizeZip64 = entry.size >= ZIP64_MAGIC || entry.compressedSize >= ZIP64_MAGIC;
+            boolean offsetZip64 = entry.offset >= ZIP64_MAGIC;
+            int extraSize = (sizeZip64 || offsetZip64) ? 4 + (sizeZip64 ? 16 : 0) + (offsetZip64 ? 8 : 0) : 0;
+            short version = (short) (extraSize > 0 || entry.reserveZip64 ? 45 : entry.method == ZipEntry.DEFLATED ? 20 : 10);
+            ByteBuffer header = buffer(46 + entry.name.length + extraSize);
+            header.putInt(0x02014b50);
+            header.putShort(version);
+            header.putShort(version);
+            header.putShort((short) FLAG_UTF8);
+            header.putShort((short) entry.method);
+            header.putInt(entry.dosTime);
+            header.putInt((int) entry.crc32);
+            header.putInt((int) (sizeZip64 ? ZIP64_MAGIC : entry.compressedSize));
+            header.putInt((int) (sizeZip64 ? ZIP64_MAGIC : entry.size));
+            header.putShort((short) entry.name.length);
+            header.putShort((short) extraSize);
+            // comment length, disk number, internal attributes
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            // 外部属性: MS-DOS文件夹标志
+            header.putInt(entry.isDirectory() ? 0x10 : 0);
+            header.putInt((int) (offsetZip64 ? ZIP64_MAGIC : entry.offset));
+            header.put(entry.name);
+            if (extraSize > 0) {
+                header.putShort((short) ZIP64_EXTRA_ID);
+                header.putShort((short) (extraSize - 4));
+                if (sizeZip64) {
+                    header.putLong(entry.size);
+                    header.putLong(entry.compressedSize);
+                }
+                if (offsetZip64) {
+                    header.putLong(entry.offset);
+                }
+            }
+            output(header.array(), 0, header.position());
+        }
+        long centralSize = position() - centralOffset;
+        int count = entries.size();
+        if (count >= ZIP64_MAGIC_COUNT || centralOffset >= ZIP64_MAGIC || centralSize >= ZIP64_MAGIC) {
+            long zip64EndOffset = position();
+            ByteBuffer end = buffer(56 + 20);
+            end.putInt(0x06064b50);
+            end.putLong(44);
+            end.putShort((short) 45);
+            end.putShort((short) 45);
+            end.putInt(0);
+            end.putInt(0);
+            end.putLong(count);
+            end.putLong(count);
+            end.putLong(centralSize);
+            end.putLong(centralOffset);
+            // zip64 end of central directory locator
+            end.putInt(0x07064b50);
+            end.putInt(0);
+            end.putLong(zip64EndOffset);
+            end.putInt(1);
+            output(end.array(), 0, end.position());
+        }
+        ByteBuffer end = buffer(22);
+        end.putInt(0x06054b50);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        end.putShort((short) Math.min(count, ZIP64_MAGIC_COUNT));
+        end.putInt((int) Math.min(centralSize, ZIP64_MAGIC));
+        end.putInt((int) Math.min(centralOffset, ZIP64_MAGIC));
+        end.putShort((short) 0);
+        output(end.array(), 0, end.position());
+    }
+
+    private long position() {
+        return flushedPosition + writeBufferSize;
+    }
+
+    private void output(byte[] bytes, int offset, int length) throws IOException {
+        if (length > writeBuffer.length - writeBufferSize) {
+            flush();
+        }
+        if (length >= writeBuffer.length) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                flushedPosition += channel.write(buffer, flushedPosition);
+            }
+            return;
+        }
+        System.arraycopy(bytes, offset, writeBuffer, writeBufferSize, length);
+        writeBufferSize += length;
+    }
+
+    private void flush() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(writeBuffer, 0, writeBufferSize);
+        while (buffer.hasRemaining()) {
+            flushedPosition += channel.write(buffer, flushedPosition);
+        }
+        writeBufferSize = 0;
+    }
+
+    /**
+     * 回填已写出的数据，数据可能部分已写入channel、部分还在写缓冲区中
+     */
+    private void patch(long position, byte[] bytes) throws IOException {
+        for (int i = 0; i < bytes.length; i++) {
+            long target = position + i;
+            if (target >= flushedPosition) {
+                writeBuffer[(int) (target - flushedPosition)] = bytes[i];
+            } else {
+                int length = (int) Math.min(bytes.length - i, flushedPosition - target);
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, i, length);
+                long writePosition = target;
+                while (buffer.hasRemaining()) {
+                    writePosition += channel.write(buffer, writePosition);
+                }
+                i += length - 1;
+            }
+        }
+    }
+
+    private static ByteBuffer buffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static int dosTime(long time) {
+        LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time < 0 ? System.currentTimeMillis() : time),
+            ZoneId.systemDefault());
+        if (dateTime.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (dateTime.getYear() - 1980) << 25 | dateTime.getMonthValue() << 21 | dateTime.getDayOfMonth() << 16
+            | dateTime.getHour() << 11 | dateTime.getMinute() << 5 | dateTime.getSecond() >> 1;
+    }
+
+    private interface Pending {
+        void write() throws IOException;
+    }
+
+    /**
+     * 已写入的文件条目
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class WrittenEntry {
+        private final String name;
+
+        // 压缩方法: ZipEntry.STORED、ZipEntry.DEFLATED
+        private final int method;
+
+        private final long crc32;
+
+        private final long size;
+
+        private final long compressedSize;
+
+        // 条目数据在zip文件中的偏移，DEFLATED条目为完整的raw deflate流
+        private final long dataOffset;
+    }
+
+    private static class Entry {
+        private final byte[] name;
+
+        private final int dosTime;
+
+        private final int method;
+
+        private final boolean reserveZip64;
+
+        private final CRC32 crc = new CRC32();
+
+        private long crc32;
+
+        private long size;
+
+        private long compressedSize;
+
+        private long offset;
+
+        private Entry(String name, long time, int method, boolean reserveZip64) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.dosTime = dosTime(time);
+            this.method = method;
+            this.reserveZip64 = reserveZip64;
+        }
+
+        private boolean isDirectory() {
+            return name.length > 0 && name[name.length - 1] == '/';
+        }
+    }
+}
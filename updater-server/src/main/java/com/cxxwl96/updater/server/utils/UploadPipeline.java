@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.utils;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.model.Constant;
+import com.cxxwl96.updater.api.model.FileModel;
+import com.cxxwl96.updater.api.utils.hash.Hasher;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 上传应用的单次流式处理
+ * - 顺序读取上传的zip条目，丢弃忽略的文件，解压的同时计算哈希值并写入分发zip
+ * - 整个上传只读一遍数据，不再落地原始zip、遍历删除忽略文件和重新压缩
+ * - 分发zip由 {@link ParallelZipWriter} 多核并行压缩
+ * - 压缩率高的文件直接复用分发zip中的deflate数据生成gzip预压缩文件，单文件更新时无需再次压缩
+ * - 条目名不是合法的UTF-8时按备选编码（默认GBK）解码，兼容Windows资源管理器压缩的zip；存在重复的文件时上传失败
+ *
+ * @author cxxwl96
+ * @since 2024/04/29 21:16
+ */
+@Slf4j
+public class UploadPipeline {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // 小于该大小的文件不生成gzip预压缩文件
+    private static final long MIN_GZIP_SIZE = 1024;
+
+    // gzip预压缩文件与原文件的最大大小比例，超过则不生成
+    private static final double MAX_GZIP_RATIO = 0.9;
+
+    // gzip文件头: ID1 ID2 CM=deflate FLG=0 MTIME=0 XFL=0 OS=unknown
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    // 应用内容文件夹
+    private final File contentFile;
+
+    // 分发zip文件
+    private final File zipFile;
+
+    // 忽略的文件名，匹配路径中的任意一级
+    private final Set<String> ignoredNames = new HashSet<>();
+
+    private final HashAlgorithm algorithm;
+
+    private CompressionPolicy compressionPolicy = new CompressionPolicy(null, Deflater.DEFAULT_COMPRESSION);
+
+    // gzip预压缩文件夹，为null时不生成
+    private File gzipFile;
+
+    // 条目名未设置UTF-8标志且不是合法的UTF-8时使用的编码，如Windows资源管理器压缩的zip使用GBK
+    private Charset fallbackCharset = Charset.forName("GBK");
+
+    private int storedCount;
+
+    public UploadPipeline(File contentFile, File zipFile, HashAlgorithm algorithm) {
+        this.contentFile = contentFile;
+        this.zipFile = zipFile;
+        this.algorithm = HashAlgorithm.orDefault(algorithm);
+    }
+
+    /**
+     * 添加忽略的文件名
+     *
+     * @param names 文件名
+     * @return this
+     */
+    public UploadPipeline ignore(Collection<String> names) {
+        if (names != null) {
+            ignoredNames.addAll(names);
+        }
+        return this;
+    }
+
+    /**
+     * 设置分发zip的压缩策略
+     *
+     * @param compressionPolicy 压缩策略
+     * @return this
+     */
+    public UploadPipeline compression(CompressionPolicy compressionPolicy) {
+        this.compressionPolicy = compressionPolicy;
+        return this;
+    }
+
+    /**
+     * 设置gzip预压缩文件夹，文件路径为 {gzipFile}/{相对路径}.gz
+     *
+     * @param gzipFile gzip预压缩文件夹
+     * @return this
+     */
+    public UploadPipeline gzip(File gzipFile) {
+        this.gzipFile = gzipFile;
+        return this;
+    }
+
+    /**
+     * 设置条目名的备选编码
+     * - 设置了UTF-8标志的条目名按UTF-8解码
+     * - 未设置标志的条目名先按UTF-8解码，不是合法的UTF-8时按备选编码解码
+     *
+     * @param fallbackCharset 备选编码
+     * @return this
+     */
+    public UploadPipeline charset(Charset fallbackCharset) {
+        this.fallbackCharset = fallbackCharset;
+        return this;
+    }
+
+    /**
+     * 处理上传的zip
+     * - 分发zip中的条目以应用内容文件夹名为根目录，与重新压缩内容文件夹的结果一致
+     * - 所有文件处理完后由checklistWriter生成CHECKLIST，作为最后一个条目写入分发zip
+     *
+     * @param in 上传的zip
+     * @param checklistWriter 根据应用文件列表生成CHECKLIST文件
+     * @return 应用文件列表，路径为相对路径并包含文件大小
+     * @throws IOException IOException
+     */
+    public List<FileModel> process(InputStream in, Function<List<FileModel>, File> checklistWriter) throws IOException {
+        FileUtil.mkParentDirs(zipFile);
+        String root = contentFile.getName() + "/";
+        List<FileModel> fileModels;
+        ParallelZipWriter zipOut;
+        try (ParallelZipWriter writer = new ParallelZipWriter(zipFile)) {
+            zipOut = writer;
+            zipOut.setLevel(compressionPolicy.getLevel());
+            fileModels = extract(new ZipInputStream(in, new ZipNameCharset(fallbackCharset)), zipOut, root);
+            File checksumFile = checklistWriter.apply(fileModels);
+            byte[] checklist = FileUtil.readBytes(checksumFile);
+            zipOut.putNextEntry(root + Constant.CHECKLIST, checksumFile.lastModified(), checklist.length);
+            zipOut.write(checklist, 0, checklist.length);
+            zipOut.closeEntry();
+        }
+        log.info("Zip '{}': {} entries stored, {} deflated", zipFile.getPath(), storedCount, fileModels.size() + 1 - storedCount);
+        if (gzipFile != null) {
+            writeGzipFiles(zipOut.getEntries(), root);
+        }
+        return fileModels;
+    }
+
+    /**
+     * 由分发zip中的deflate数据生成gzip预压缩文件: gzip文件头 + raw deflate流 + crc32 + 原始大小
+     */
+    private void writeGzipFiles(List<ParallelZipWriter.WrittenEntry> entries, String root) throws IOException {
+        int count = 0;
+        try (FileChannel zipChannel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ)) {
+            for (ParallelZipWriter.WrittenEntry entry : entries) {
+                if (entry.getMethod() != ZipEntry.DEFLATED || !entry.getName().startsWith(root) || entry.getSize() < MIN_GZIP_SIZE
+                    || GZIP_HEADER.length + entry.getCompressedSize() + 8 > entry.getSize() * MAX_GZIP_RATIO) {
+                    continue;
+                }
+                File file = FileUtil.file(gzipFile, entry.getName().substring(root.length()) + ".gz");
+                FileUtil.mkParentDirs(file);
+                try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                    out.write(ByteBuffer.wrap(GZIP_HEADER));
+                    long position = entry.getDataOffset();
+                    long end = position + entry.getCompressedSize();
+                    while (position < end) {
+                        position += zipChannel.transferTo(position, end - position, out);
+                    }
+                    ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+                    trailer.putInt((int) entry.getCrc32());
+                    trailer.putInt((int) entry.getSize());
+                    trailer.flip();
+                    out.write(trailer);
+                }
+                count++;
+            }
+        }
+        log.info("Gzip '{}': {} files", gzipFile.getPath(), count);
+    }
+
+    private List<FileModel> extract(ZipInputStream zipIn, ParallelZipWriter zipOut, String root) throws IOException {
+        List<FileModel> fileModels = new ArrayList<>();
+        // 已处理的文件和文件夹，路径统一为/分隔
+        Set<String> paths = new HashSet<>();
+        zipOut.putDirectory(root, -1);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        ZipEntry entry = zipIn.getNextEntry();
+        if (entry == null) {
+            // 非zip文件读取不到任何条目
+            throw new ZipException("不是有效的zip文件或zip为空");
+        }
+        for (; entry != null; entry = zipIn.getNextEntry()) {
+            String path = StrUtil.removePrefix(entry.getName().replace("\\", "/"), "/");
+            if (StrUtil.isBlank(path) || isIgnored(path)) {
+                log.info("Ignore file '{}'", path);
+                continue;
+            }
+            // 校验路径，防止解压到内容文件夹之外
+            File file = FileUtil.file(contentFile, path);
+            // 按统一分隔符后的路径判断文件夹，ZipEntry.isDirectory()不识别以反斜杠结尾的条目
+            if (path.endsWith("/")) {
+                if (paths.add(path)) {
+                    FileUtil.mkdir(file);
+                    zipOut.putDirectory(root + path, entry.getTime());
+                }
+                continue;
+            }
+            if (Constant.CHECKLIST.equals(file.getName())) {
+                // 上传包中的CHECKLIST由服务端重新生成
+                continue;
+            }
+            // 同名文件后者会覆盖前者的内容，而分发zip和清单中会出现两份
+            if (!paths.add(path)) {
+                throw new ZipException("zip中存在重复的文件: " + path);
+            }
+            // 读取开头的数据决定直接存储还是压缩
+            int read = readSample(zipIn, buffer);
+            boolean store = compressionPolicy.isStore(path, buffer, read);
+            if (store) {
+                storedCount++;
+            }
+            zipOut.putNextEntry(root + path, entry.getTime(), entry.getSize(), store);
+            Hasher hasher = algorithm.newHasher();
+            long size = 0;
+            FileUtil.mkParentDirs(file);
+            try (OutputStream out = FileUtil.getOutputStream(file)) {
+                for (; read != -1; read = zipIn.read(buffer)) {
+                    out.write(buffer, 0, read);
+                    hasher.update(buffer, 0, read);
+                    zipOut.write(buffer, 0, read);
+                    size += read;
+                }
+            }
+            zipOut.closeEntry();
+            if (entry.getTime() != -1) {
+                file.setLastModified(entry.getTime());
+            }
+            String hash = hasher.digest();
+            fileModels.add(new FileModel().setPath(path)
+                .setName(file.getName())
+                .setCrc32(algorithm == HashAlgorithm.CRC32 ? Long.valueOf(hash) : null)
+                .setHash(hash)
+                .setSize(size));
+        }
+        return fileModels;
+    }
+
+    private static int readSample(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read == -1) {
+                break;
+            }
+            length += read;
+        }
+        return length == 0 ? -1 : length;
+    }
+
+    private boolean isIgnored(String path) {
+        for (String name : StrUtil.split(path, '/')) {
+            if (ignoredNames.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * zip条目名编码: 先按UTF-8解码，不是合法的UTF-8时按备选编码解码
+     * - 只用于ZipInputStream读取条目名，每个条目名一次性完整解码，不支持流式解码
+     * - 设置了UTF-8标志的条目名由JDK直接按UTF-8解码，不经过此编码
+     */
+    private static class ZipNameCharset extends Charset {
+        private final Charset fallback;
+
+        private ZipNameCharset(Charset fallback) {
+            super("X-UTF-8-" + fallback.name(), null);
+            this.fallback = fallback;
+        }
+
+        @Override
+        public boolean contains(Charset charset) {
+            return false;
+        }
+
+        @Override
+        public boolean canEncode() {
+            return false;
+        }
+
+        @Override
+        public CharsetDecoder newDecoder() {
+            return new CharsetDecoder(this, 1, 1) {
+                @Override
+                protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+                    for (Charset charset : new Charset[] {StandardCharsets.UTF_8, fallback}) {
+                        CharBuffer decoded;
+                        try {
+                            // 新建的解码器遇到非法或无法映射的字节时抛出异常
+                            decoded = charset.newDecoder().decode(in.duplicate());
+                        } catch (CharacterCodingException exception) {
+                            continue;
+                        }
+                        if (out.remaining() < decoded.remaining()) {
+                            return CoderResult.OVERFLOW;
+                        }
+                        out.put(decoded);
+                        in.position(in.limit());
+                        return CoderResult.UNDERFLOW;
+                    }
+                    return CoderResult.malformedForLength(in.remaining());
+                }
+            };
+        }
+
+        @Override
+        public CharsetEncoder newEncoder() {
+            throw new UnsupportedOperationException("zip条目名编码只支持解码");
+        }
+    }
+}
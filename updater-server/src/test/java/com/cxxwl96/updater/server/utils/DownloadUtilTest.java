@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.utils;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * DownloadUtilTest
+ *
+ * @author cxxwl96
+ * @since 2024/05/18 20:10
+ */
+class DownloadUtilTest {
+    private static final int LENGTH = 100 * 1024;
+
+    @TempDir
+    File tempDir;
+
+    private File file;
+
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() {
+        content = new byte[LENGTH];
+        new Random(96).nextBytes(content);
+        file = FileUtil.writeBytes(content, new File(tempDir, "app.zip"));
+    }
+
+    @Test
+    void parseRanges() {
+        assertRanges(DownloadUtil.parseRanges("bytes=0-499", 1000), 0, 499);
+        assertRanges(DownloadUtil.parseRanges("bytes=500-", 1000), 500, 999);
+        assertRanges(DownloadUtil.parseRanges("bytes=-200", 1000), 800, 999);
+        assertRanges(DownloadUtil.parseRanges("bytes=-2000", 1000), 0, 999);
+        assertRanges(DownloadUtil.parseRanges("bytes=900-5000", 1000), 900, 999);
+        assertRanges(DownloadUtil.parseRanges("bytes=0-9, 100-199", 1000), 0, 9, 100, 199);
+        // 不可满足的范围被忽略，全部不可满足时为空列表
+        assertRanges(DownloadUtil.parseRanges("bytes=0-9,1000-1099", 1000), 0, 9);
+        assertTrue(DownloadUtil.parseRanges("bytes=1000-", 1000).isEmpty());
+        assertTrue(DownloadUtil.parseRanges("bytes=-0", 1000).isEmpty());
+    }
+
+    @Test
+    void parseInvalidRanges() {
+        assertNull(DownloadUtil.parseRanges(null, 1000));
+        assertNull(DownloadUtil.parseRanges("", 1000));
+        assertNull(DownloadUtil.parseRanges("items=0-9", 1000));
+        assertNull(DownloadUtil.parseRanges("bytes=", 1000));
+        assertNull(DownloadUtil.parseRanges("bytes=9-0", 1000));
+        assertNull(DownloadUtil.parseRanges("bytes=a-9", 1000));
+        assertNull(DownloadUtil.parseRanges("bytes=10", 1000));
+        assertNull(DownloadUtil.parseRanges("bytes=" + StrUtil.repeatAndJoin("0-0", 33, ","), 1000));
+    }
+
+    @Test
+    void mergeOverlappingRanges() {
+        // 重叠、相邻的范围合并，并按起始位置排序
+        assertRanges(DownloadUtil.parseRanges("bytes=100-199,0-99", 1000), 0, 199);
+        assertRanges(DownloadUtil.parseRanges("bytes=0-99,50-149", 1000), 0, 149);
+        assertRanges(DownloadUtil.parseRanges("bytes=500-599,0-9,550-,20-29", 1000), 0, 9, 20, 29, 500, 999);
+        assertRanges(DownloadUtil.parseRanges("bytes=0-9,0-9,0-9", 1000), 0, 9);
+    }
+
+    @Test
+    void rangesLongerThanFile() {
+        // 重复请求整个文件时返回完整文件，而不是多倍长度的multipart
+        assertNull(DownloadUtil.parseRanges("bytes=" + StrUtil.repeatAndJoin("0-", 32, ","), 1000));
+        assertNull(DownloadUtil.parseRanges("bytes=0-599,400-999", 1000));
+    }
+
+    @Test
+    void downloadFullFile() {
+        MockHttpServletResponse response = download(new MockHttpServletRequest("GET", "/download"));
+        assertEquals(200, response.getStatus());
+        assertEquals(String.valueOf(LENGTH), response.getHeader("Content-Length"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    void downloadSingleRange() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Range", "bytes=1000-1999");
+        MockHttpServletResponse response = download(request);
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 1000-1999/" + LENGTH, response.getHeader("Content-Range"));
+        assertEquals("1000", response.getHeader("Content-Length"));
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, 2000), response.getContentAsByteArray());
+    }
+
+    @Test
+    void downloadUnsatisfiableRange() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Range", "bytes=" + LENGTH + "-");
+        MockHttpServletResponse response = download(request);
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */" + LENGTH, response.getHeader("Content-Range"));
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void downloadMultipleRanges() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Range", "bytes=0-9,-10");
+        MockHttpServletResponse response = download(request);
+        assertEquals(206, response.getStatus());
+        String contentType = response.getHeader("Content-type");
+        assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+        byte[] body = response.getContentAsByteArray();
+        // Content-Length与实际写出的multipart长度一致
+        assertEquals(String.valueOf(body.length), response.getHeader("Content-Length"));
+        String boundary = StrUtil.subAfter(contentType, "boundary=", false);
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("--" + boundary + "\r\nContent-Type: application/x-zip-compressed\r\nContent-Range: bytes 0-9/" + LENGTH
+            + "\r\n\r\n" + new String(content, 0, 10, StandardCharsets.ISO_8859_1) + "\r\n"));
+        assertTrue(text.contains("Content-Range: bytes " + (LENGTH - 10) + "-" + (LENGTH - 1) + "/" + LENGTH + "\r\n\r\n"
+            + new String(content, LENGTH - 10, 10, StandardCharsets.ISO_8859_1) + "\r\n"));
+        assertTrue(text.endsWith("\r\n--" + boundary + "--\r\n"));
+    }
+
+    @Test
+    void ifRangeWithLastModified() {
+        String lastModified = DateUtil.formatHttpDate(new Date(file.lastModified()));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Range", "bytes=10-19");
+        request.addHeader("If-Range", lastModified);
+        assertEquals(206, download(request).getStatus());
+
+        // 文件已变化时忽略Range，返回完整文件
+        request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Range", "bytes=10-19");
+        request.addHeader("If-Range", DateUtil.formatHttpDate(new Date(file.lastModified() - 60_000)));
+        MockHttpServletResponse response = download(request);
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    void ifRangeWithEtag() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/download");
+        request.addHeader("Range", "bytes=10-19");
+        request.addHeader("If-Range", "\"1234\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        response.setHeader("ETag", "\"1234\"");
+        DownloadUtil.download(request, response, file, "app.zip", false);
+        assertEquals(206, response.getStatus());
+
+        // 弱ETag和不一致的ETag都不能用于续传
+        for (String ifRange : new String[] {"W/\"1234\"", "\"5678\""}) {
+            request = new MockHttpServletRequest("GET", "/download");
+            request.addHeader("Range", "bytes=10-19");
+            request.addHeader("If-Range", ifRange);
+            response = new MockHttpServletResponse();
+            response.setHeader("ETag", "\"1234\"");
+            DownloadUtil.download(request, response, file, "app.zip", false);
+            assertEquals(200, response.getStatus());
+        }
+    }
+
+    @Test
+    void headWithoutBody() {
+        MockHttpServletResponse response = download(new MockHttpServletRequest("HEAD", "/download"));
+        assertEquals(200, response.getStatus());
+        assertEquals(String.valueOf(LENGTH), response.getHeader("Content-Length"));
+        assertEquals(0, response.getContentAsByteArray().length);
+
+        MockHttpServletRequest request = new MockHttpServletRequest("HEAD", "/download");
+        request.addHeader("Range", "bytes=0-9,20-29");
+        response = download(request);
+        assertEquals(206, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    private MockHttpServletResponse download(MockHttpServletRequest request) {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        DownloadUtil.download(request, response, file, "app.zip", false);
+        return response;
+    }
+
+    private static void assertRanges(List<long[]> ranges, long... expected) {
+        long[] actual = ranges.stream().flatMapToLong(Arrays::stream).toArray();
+        assertArrayEquals(expected, actual);
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * ParallelZipWriterTest
+ *
+ * @author cxxwl96
+ * @since 2024/05/18 21:30
+ */
+class ParallelZipWriterTest {
+    private static final int BLOCK_SIZE = 128 * 1024;
+
+    private static final int LOCAL_HEADER_SIZE = 30;
+
+    private static final int PADDING_EXTRA_ID = 0xD935;
+
+    @TempDir
+    File tempDir;
+
+    private final Random random = new Random(96);
+
+    @Test
+    void roundTrip() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        // 跨越多个压缩块，后面的块依赖前一块末尾作为字典
+        files.put("app/lib/multi-block.txt", text(3 * BLOCK_SIZE + 1234));
+        files.put("app/empty.txt", new byte[0]);
+        files.put("app/one-byte.txt", new byte[] {'x'});
+        files.put("app/block-aligned.txt", text(2 * BLOCK_SIZE));
+        files.put("app/random.bin", randomBytes(BLOCK_SIZE + 99));
+        files.put("app/中文目录/配置 文件.txt", text(5000));
+
+        File zipFile = new File(tempDir, "app.zip");
+        List<ParallelZipWriter.WrittenEntry> entries;
+        try (ParallelZipWriter writer = new ParallelZipWriter(zipFile, 4)) {
+            writer.putDirectory("app/", -1);
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                writer.putNextEntry(file.getKey(), -1, file.getValue().length);
+                write(writer, file.getValue());
+                writer.closeEntry();
+            }
+            writer.close();
+            entries = writer.getEntries();
+        }
+        assertReadBack(zipFile, files);
+        assertEquals(files.size(), entries.size());
+        for (ParallelZipWriter.WrittenEntry entry : entries) {
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertDeflateData(zipFile, entry, files.get(entry.getName()));
+        }
+    }
+
+    @Test
+    void storedEntries() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("app/lib/a.jar", randomBytes(2 * BLOCK_SIZE + 7));
+        files.put("app/empty.png", new byte[0]);
+        files.put("app/readme.txt", text(3000));
+
+        File zipFile = new File(tempDir, "app.zip");
+        try (ParallelZipWriter writer = new ParallelZipWriter(zipFile, 2)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                boolean store = !file.getKey().endsWith(".txt");
+                writer.putNextEntry(file.getKey(), -1, file.getValue().length, store);
+                write(writer, file.getValue());
+                writer.closeEntry();
+            }
+        }
+        assertReadBack(zipFile, files);
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            ZipEntry jar = zip.getEntry("app/lib/a.jar");
+            assertEquals(ZipEntry.STORED, jar.getMethod());
+            assertEquals(jar.getSize(), jar.getCompressedSize());
+            assertEquals(ZipEntry.STORED, zip.getEntry("app/empty.png").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("app/readme.txt").getMethod());
+        }
+    }
+
+    @Test
+    void unknownSizeReservesZip64Extra() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("app/unknown.txt", text(BLOCK_SIZE + 10));
+        files.put("app/forced.bin", randomBytes(1000));
+        files.put("app/unknown-stored.bin", randomBytes(500));
+        files.put("app/known.txt", text(100));
+
+        File zipFile = new File(tempDir, "app.zip");
+        List<ParallelZipWriter.WrittenEntry> entries;
+        try (ParallelZipWriter writer = new ParallelZipWriter(zipFile, 2)) {
+            writer.putNextEntry("app/unknown.txt", -1, -1);
+            write(writer, files.get("app/unknown.txt"));
+            // 声明的大小达到预留阈值，实际大小不足4G时预留字段改为填充字段
+            writer.putNextEntry("app/forced.bin", -1, 0xF0000000L);
+            write(writer, files.get("app/forced.bin"));
+            writer.putNextEntry("app/unknown-stored.bin", -1, -1, true);
+            write(writer, files.get("app/unknown-stored.bin"));
+            writer.putNextEntry("app/known.txt", -1, 100);
+            write(writer, files.get("app/known.txt"));
+            writer.close();
+            entries = writer.getEntries();
+        }
+        assertReadBack(zipFile, files);
+        for (ParallelZipWriter.WrittenEntry entry : entries) {
+            int extraId = localExtraId(zipFile, entry);
+            if (entry.getName().equals("app/known.txt")) {
+                assertEquals(-1, extraId);
+            } else {
+                assertEquals(PADDING_EXTRA_ID, extraId, entry.getName());
+            }
+            assertDeflateData(zipFile, entry, files.get(entry.getName()));
+        }
+    }
+
+    @Test
+    void zip64EntryCount() throws IOException {
+        // 条目数超过65535时写出zip64中央目录结束记录
+        int count = 70_000;
+        File zipFile = new File(tempDir, "many.zip");
+        try (ParallelZipWriter writer = new ParallelZipWriter(zipFile, 2)) {
+            for (int i = 0; i < count; i++) {
+                writer.putNextEntry("app/" + i + ".txt", -1, 8);
+                byte[] bytes = String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+                write(writer, bytes);
+            }
+        }
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            assertEquals(count, zip.size());
+            ZipEntry last = zip.getEntry("app/" + (count - 1) + ".txt");
+            assertNotNull(last);
+            assertEquals(String.valueOf(count - 1), IoUtil.read(zip.getInputStream(last), StandardCharsets.UTF_8));
+        }
+        int read = 0;
+        try (ZipInputStream in = new ZipInputStream(FileUtil.getInputStream(zipFile))) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                assertEquals(String.valueOf(read), new String(IoUtil.readBytes(in, false), StandardCharsets.UTF_8));
+                read++;
+            }
+        }
+        assertEquals(count, read);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "zip64.large", matches = "true")
+    void zip64LargeEntry() throws IOException {
+        // 超过4G的条目，需要约4.5G临时磁盘空间: mvn -pl updater-server test -Dtest=ParallelZipWriterTest -Dzip64.large=true
+        long size = 4L * 1024 * 1024 * 1024 + 400 * 1024 * 1024;
+        byte[] chunk = text(BLOCK_SIZE);
+        File zipFile = new File(tempDir, "large.zip");
+        CRC32 crc = new CRC32();
+        try (ParallelZipWriter writer = new ParallelZipWriter(zipFile)) {
+            writer.putNextEntry("app/small.txt", -1, 5);
+            write(writer, "small".getBytes(StandardCharsets.UTF_8));
+            writer.putNextEntry("app/large.bin", -1, -1, true);
+            for (long written = 0; written < size; written += chunk.length) {
+                write(writer, chunk);
+                crc.update(chunk);
+            }
+            // 偏移超过4G的条目
+            writer.putNextEntry("app/after.txt", -1, 5);
+            write(writer, "after".getBytes(StandardCharsets.UTF_8));
+        }
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            ZipEntry large = zip.getEntry("app/large.bin");
+            assertEquals(size, large.getSize());
+            assertEquals(crc.getValue(), large.getCrc());
+            assertEquals("after", IoUtil.read(zip.getInputStream(zip.getEntry("app/after.txt")), StandardCharsets.UTF_8));
+        }
+        try (ZipInputStream in = new ZipInputStream(FileUtil.getInputStream(zipFile))) {
+            assertEquals("app/small.txt", in.getNextEntry().getName());
+            assertEquals("app/large.bin", in.getNextEntry().getName());
+            byte[] buffer = new byte[1024 * 1024];
+            long read = 0;
+            CRC32 actual = new CRC32();
+            for (int count = in.read(buffer); count != -1; count = in.read(buffer)) {
+                actual.update(buffer, 0, count);
+                read += count;
+            }
+            assertEquals(size, read);
+            assertEquals(crc.getValue(), actual.getValue());
+            assertEquals("app/after.txt", in.getNextEntry().getName());
+            assertEquals("after", new String(IoUtil.readBytes(in, false), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void assertReadBack(File zipFile, Map<String, byte[]> files) throws IOException {
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                ZipEntry entry = zip.getEntry(file.getKey());
+                assertNotNull(entry, file.getKey());
+                assertEquals(file.getValue().length, entry.getSize());
+                assertEquals(crc32(file.getValue()), entry.getCrc());
+                try (InputStream in = zip.getInputStream(entry)) {
+                    assertArrayEquals(file.getValue(), IoUtil.readBytes(in, false), file.getKey());
+                }
+            }
+        }
+        // 顺序读取时依赖本地文件头中回填的大小和crc32
+        int count = 0;
+        try (ZipInputStream in = new ZipInputStream(FileUtil.getInputStream(zipFile), StandardCharsets.UTF_8)) {
+            for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                byte[] expected = files.get(entry.getName());
+                assertNotNull(expected, entry.getName());
+                assertArrayEquals(expected, IoUtil.readBytes(in, false), entry.getName());
+                count++;
+            }
+        }
+        assertEquals(files.size(), count);
+    }
+
+    /**
+     * 条目数据偏移处为完整的raw deflate流或原始数据，可直接复用
+     */
+    private static void assertDeflateData(File zipFile, ParallelZipWriter.WrittenEntry entry, byte[] expected) throws IOException {
+        assertEquals(expected.length, entry.getSize());
+        assertEquals(crc32(expected), entry.getCrc32());
+        // nowrap的Inflater需要在末尾多提供一个字节
+        byte[] data = new byte[(int) entry.getCompressedSize() + 1];
+        try (RandomAccessFile raf = new RandomAccessFile(zipFile, "r")) {
+            raf.seek(entry.getDataOffset());
+            raf.readFully(data, 0, data.length - 1);
+        }
+        if (entry.getMethod() == ZipEntry.STORED) {
+            assertArrayEquals(expected, Arrays.copyOf(data, data.length - 1));
+            return;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                assertFalse(count == 0 && inflater.needsInput(), "truncated deflate stream: " + entry.getName());
+                out.write(buffer, 0, count);
+            }
+            assertEquals(1, inflater.getRemaining());
+            assertArrayEquals(expected, out.toByteArray(), entry.getName());
+        } catch (DataFormatException exception) {
+            throw new IOException(exception);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 读取本地文件头中第一个扩展字段的ID，没有扩展字段时为-1
+     */
+    private static int localExtraId(File zipFile, ParallelZipWriter.WrittenEntry entry) throws IOException {
+        int nameLength = entry.getName().getBytes(StandardCharsets.UTF_8).length;
+        try (RandomAccessFile raf = new RandomAccessFile(zipFile, "r")) {
+            long dataOffset = entry.getDataOffset();
+            // 数据前是 本地文件头 + 文件名 + 扩展字段，先假设没有扩展字段
+            long offset = dataOffset - LOCAL_HEADER_SIZE - nameLength;
+            byte[] header = new byte[LOCAL_HEADER_SIZE];
+            raf.seek(offset);
+            raf.readFully(header);
+            ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) == 0x04034b50) {
+                assertEquals(0, buffer.getShort(28));
+                return -1;
+            }
+            // 预留的扩展字段为20字节
+            offset -= 20;
+            raf.seek(offset);
+            raf.readFully(header);
+            buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+            assertEquals(0x04034b50, buffer.getInt(0));
+            assertEquals(20, buffer.getShort(28));
+            byte[] extra = new byte[4];
+            raf.seek(offset + LOCAL_HEADER_SIZE + nameLength);
+            raf.readFully(extra);
+            return ByteBuffer.wrap(extra).order(ByteOrder.LITTLE_ENDIAN).getShort(0) & 0xFFFF;
+        }
+    }
+
+    private static void write(ParallelZipWriter writer, byte[] bytes) throws IOException {
+        // 按不同长度分次写入，覆盖跨块拷贝
+        int offset = 0;
+        int step = 1;
+        while (offset < bytes.length) {
+            int length = Math.min(step, bytes.length - offset);
+            writer.write(bytes, offset, length);
+            offset += length;
+            step = step * 7 % 100_003 + 1;
+        }
+    }
+
+    private byte[] text(int size) {
+        String[] words = {"updater", "version", "manifest", "checklist", "download", "patch", "中文", "\n"};
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size + 16);
+        while (out.size() < size) {
+            byte[] word = (words[random.nextInt(words.length)] + " ").getBytes(StandardCharsets.UTF_8);
+            out.write(word, 0, word.length);
+        }
+        return Arrays.copyOf(out.toByteArray(), size);
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static long crc32(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
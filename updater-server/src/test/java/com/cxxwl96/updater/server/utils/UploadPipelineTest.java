@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2021-2024, cxxwl96.com (cxxwl96@sina.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cxxwl96.updater.server.utils;
+
+import com.cxxwl96.updater.api.enums.HashAlgorithm;
+import com.cxxwl96.updater.api.model.Constant;
+import com.cxxwl96.updater.api.model.FileModel;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.io.IoUtil;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * UploadPipelineTest
+ *
+ * @author cxxwl96
+ * @since 2024/05/18 22:05
+ */
+class UploadPipelineTest {
+    @TempDir
+    File tempDir;
+
+    private final Random random = new Random(96);
+
+    @Test
+    void processAndReuseDeflateDataForGzip() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("lib/app.txt", text(300 * 1024));
+        files.put("small.txt", text(100));
+        files.put("random.bin", randomBytes(64 * 1024));
+        files.put("lib/plugin.jar", text(8192));
+        files.put("empty.txt", new byte[0]);
+
+        File contentFile = new File(tempDir, "1.0.0/content");
+        File zipFile = new File(tempDir, "1.0.0/app.zip");
+        File gzipFile = new File(tempDir, "1.0.0/.gzip");
+        UploadPipeline pipeline = new UploadPipeline(contentFile, zipFile, HashAlgorithm.CRC32).compression(
+            new CompressionPolicy(Collections.singletonList("jar"), -1)).gzip(gzipFile);
+        List<FileModel> fileModels = pipeline.process(new ByteArrayInputStream(zip(files)), checklistWriter());
+
+        // 应用文件及哈希值
+        assertEquals(files.size(), fileModels.size());
+        for (FileModel fileModel : fileModels) {
+            byte[] expected = files.get(fileModel.getPath());
+            assertNotNull(expected, fileModel.getPath());
+            assertEquals(String.valueOf(crc32(expected)), fileModel.getHash());
+            assertEquals(expected.length, fileModel.getSize());
+            assertArrayEquals(expected, FileUtil.readBytes(FileUtil.file(contentFile, fileModel.getPath())));
+        }
+
+        // 分发zip以内容文件夹名为根目录，CHECKLIST为最后一个条目
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                ZipEntry entry = zip.getEntry("content/" + file.getKey());
+                assertNotNull(entry, file.getKey());
+                try (InputStream in = zip.getInputStream(entry)) {
+                    assertArrayEquals(file.getValue(), IoUtil.readBytes(in, false));
+                }
+            }
+            assertEquals(ZipEntry.STORED, zip.getEntry("content/lib/plugin.jar").getMethod());
+            assertEquals(ZipEntry.STORED, zip.getEntry("content/random.bin").getMethod());
+            assertEquals(ZipEntry.DEFLATED, zip.getEntry("content/lib/app.txt").getMethod());
+            List<String> names = Collections.list(zip.entries()).stream().map(ZipEntry::getName).collect(Collectors.toList());
+            assertEquals("content/" + Constant.CHECKLIST, names.get(names.size() - 1));
+        }
+
+        // 压缩率高的文件由分发zip中的deflate数据生成gzip
+        assertGzip(gzipFile, "lib/app.txt", files.get("lib/app.txt"));
+        // 过小、直接存储和空文件不生成gzip
+        for (String path : new String[] {"small.txt", "random.bin", "lib/plugin.jar", "empty.txt", Constant.CHECKLIST}) {
+            assertFalse(FileUtil.file(gzipFile, path + ".gz").exists(), path);
+        }
+    }
+
+    @Test
+    void nonAsciiNames() throws IOException {
+        // 文件系统编码不支持中文文件名时跳过
+        assumeTrue(Charset.forName(System.getProperty("sun.jnu.encoding")).newEncoder().canEncode("配置说明"));
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("配置/说明.txt", text(4096));
+        files.put("资源/图标 1.png", randomBytes(2048));
+
+        File contentFile = new File(tempDir, "1.0.0/content");
+        File zipFile = new File(tempDir, "1.0.0/app.zip");
+        File gzipFile = new File(tempDir, "1.0.0/.gzip");
+        List<FileModel> fileModels = new UploadPipeline(contentFile, zipFile, HashAlgorithm.CRC32).gzip(gzipFile)
+            .process(new ByteArrayInputStream(zip(files)), checklistWriter());
+
+        assertEquals(files.keySet(), fileModels.stream().map(FileModel::getPath).collect(Collectors.toSet()));
+        try (ZipFile zip = new ZipFile(zipFile)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                assertArrayEquals(file.getValue(), FileUtil.readBytes(FileUtil.file(contentFile, file.getKey())));
+                try (InputStream in = zip.getInputStream(zip.getEntry("content/" + file.getKey()))) {
+                    assertArrayEquals(file.getValue(), IoUtil.readBytes(in, false));
+                }
+            }
+        }
+        assertGzip(gzipFile, "配置/说明.txt", files.get("配置/说明.txt"));
+    }
+
+    @Test
+    void entryNameCharsets() throws IOException {
+        assumeTrue(Charset.forName(System.getProperty("sun.jnu.encoding")).newEncoder().canEncode("配置说明café"));
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("配置/说明.txt", text(100));
+        files.put("readme.txt", text(100));
+
+        // Windows资源管理器压缩的zip: GBK编码且没有UTF-8标志
+        assertEquals(files.keySet(), extractPaths("gbk", zip(files, Charset.forName("GBK"))));
+        // 未设置UTF-8标志的UTF-8条目名
+        assertEquals(files.keySet(), extractPaths("utf8-no-flag", clearUtf8Flag(zip(files, StandardCharsets.UTF_8))));
+        // 设置了UTF-8标志的条目名始终按UTF-8解码，即使只包含Latin-1字符
+        files.put("café.txt", text(100));
+        assertEquals(files.keySet(), extractPaths("utf8", zip(files, StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void duplicateEntries() throws IOException {
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("lib/a.txt", text(100));
+        files.put("lib\\a.txt", text(100));
+        File contentFile = new File(tempDir, "1.0.0/content");
+        UploadPipeline pipeline = new UploadPipeline(contentFile, new File(tempDir, "1.0.0/app.zip"), HashAlgorithm.CRC32);
+        ZipException exception = assertThrows(ZipException.class,
+            () -> pipeline.process(new ByteArrayInputStream(zip(files)), checklistWriter()));
+        assertTrue(exception.getMessage().contains("lib/a.txt"));
+
+        // 重复的文件夹条目不影响上传
+        files.clear();
+        files.put("lib/", new byte[0]);
+        files.put("lib\\", new byte[0]);
+        files.put("lib/a.txt", text(100));
+        List<FileModel> fileModels = new UploadPipeline(new File(tempDir, "2.0.0/content"), new File(tempDir, "2.0.0/app.zip"),
+            HashAlgorithm.CRC32).process(new ByteArrayInputStream(zip(files)), checklistWriter());
+        assertEquals(1, fileModels.size());
+    }
+
+    private Set<String> extractPaths(String version, byte[] zip) throws IOException {
+        File contentFile = new File(tempDir, version + "/content");
+        List<FileModel> fileModels = new UploadPipeline(contentFile, new File(tempDir, version + "/app.zip"), HashAlgorithm.CRC32)
+            .process(new ByteArrayInputStream(zip), checklistWriter());
+        for (FileModel fileModel : fileModels) {
+            assertTrue(FileUtil.file(contentFile, fileModel.getPath()).isFile(), fileModel.getPath());
+        }
+        return fileModels.stream().map(FileModel::getPath).collect(Collectors.toSet());
+    }
+
+    /**
+     * 清除本地文件头中的UTF-8标志，ZipInputStream按本地文件头解码条目名
+     */
+    private static byte[] clearUtf8Flag(byte[] zip) {
+        ByteBuffer buffer = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i + 8 <= zip.length; i++) {
+            if (buffer.getInt(i) == 0x04034b50) {
+                buffer.putShort(i + 6, (short) (buffer.getShort(i + 6) & ~(1 << 11)));
+            }
+        }
+        return zip;
+    }
+
+    private static void assertGzip(File gzipFile, String path, byte[] expected) throws IOException {
+        File file = FileUtil.file(gzipFile, path + ".gz");
+        assertTrue(file.isFile(), path);
+        try (InputStream in = new GZIPInputStream(FileUtil.getInputStream(file))) {
+            assertArrayEquals(expected, IoUtil.readBytes(in, false), path);
+        }
+    }
+
+    private Function<List<FileModel>, File> checklistWriter() {
+        return fileModels -> {
+            String checklist = fileModels.stream().map(fileModel -> fileModel.getPath() + ":" + fileModel.getHash())
+                .collect(Collectors.joining("\n"));
+            return FileUtil.writeUtf8String(checklist, new File(tempDir, Constant.CHECKLIST));
+        };
+    }
+
+    private static byte[] zip(Map<String, byte[]> files) throws IOException {
+        return zip(files, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] zip(Map<String, byte[]> files, Charset charset) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOut = new ZipOutputStream(out, charset)) {
+            for (Map.Entry<String, byte[]> file : files.entrySet()) {
+                zipOut.putNextEntry(new ZipEntry(file.getKey()));
+                zipOut.write(file.getValue());
+                zipOut.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] text(int size) {
+        String[] words = {"updater", "version", "manifest", "checklist", "download", "patch", "中文", "\n"};
+        StringBuilder builder = new StringBuilder(size);
+        while (builder.length() < size) {
+            builder.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        byte[] bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[size];
+        System.arraycopy(bytes, 0, result, 0, size);
+        return result;
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static long crc32(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}